@@ -9,6 +9,7 @@ import java.io.IOException;
 import javax.imageio.ImageIO;
 
 import com.musicg.wave.Wave;
+import com.musicg.wave.extension.FloatSpectrogram;
 import com.musicg.wave.extension.Spectrogram;
 
 public class GraphicRender{
@@ -138,6 +139,17 @@ public class GraphicRender{
 		renderSpectrogramData(spectrogram.getNormalizedSpectrogramData(),filename);
 	}
 	
+	/**
+	 * Render a float spectrogram of a wave file
+	 * 	 
+	 * @param spectrogram	float spectrogram object
+	 * @param filename	output file
+	 * @see	RGB graphic rendered
+	 */
+	public void renderSpectrogram(FloatSpectrogram spectrogram,String filename){
+		renderSpectrogramData(spectrogram.getNormalizedSpectrogramData(),spectrogram.getNumFrequencyUnit(),filename);
+	}
+	
 	/**
 	 * 
 	 * Render a spectrogram data array
@@ -154,38 +166,74 @@ public class GraphicRender{
 			
 			BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
 			for (int i=0; i<width; i++){
-				if (i==xMarker){
-					for (int j=0; j<height; j++){
-						bufferedImage.setRGB(i, j, 0xFF00);	// green
-					}
-				}
-				else{
-					for (int j=0; j<height; j++){
-						int value;
-						if (j==yMarker){
-							value=0xFF0000;	// red
-						}
-						else{
-							value=255-(int)(spectrogramData[i][j]*255);
-						}
-						bufferedImage.setRGB(i, height-1-j, value<<16|value<<8|value);
-					}
+				for (int j=0; j<height; j++){
+					setSpectrogramPixel(bufferedImage, i, j, spectrogramData[i][j]);
 				}
 			}
-					
-			try {
-				int dotPos = filename.lastIndexOf(".");
-				String extension=filename.substring(dotPos + 1);
-				ImageIO.write(bufferedImage, extension, new File(filename));
-			} catch (IOException e) {
-				e.printStackTrace();
+			saveImage(bufferedImage, filename);
+		}
+		else{
+			System.err.println("renderSpectrogramData error: Empty Wave");
+		}
+	}
+	
+	/**
+	 * 
+	 * Render a float spectrogram data array
+	 * 	 
+	 * @param spectrogramData	spectrogramData[time*numFrequencyUnit+frequency]=intensity, which time is the x-axis, frequency is the y-axis, intensity is the color darkness
+	 * @param numFrequencyUnit	number of frequency units of a frame
+	 * @param filename	output file
+	 * @see	RGB graphic rendered
+	 */
+	public void renderSpectrogramData(float[] spectrogramData, int numFrequencyUnit, String filename) {
+		
+		if (spectrogramData!=null && spectrogramData.length>0){
+			int width=spectrogramData.length/numFrequencyUnit;
+			int height=numFrequencyUnit;
+			
+			BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			int pointer=0;
+			for (int i=0; i<width; i++){
+				for (int j=0; j<height; j++){
+					setSpectrogramPixel(bufferedImage, i, j, spectrogramData[pointer++]);
+				}
 			}
+			saveImage(bufferedImage, filename);
 		}
 		else{
 			System.err.println("renderSpectrogramData error: Empty Wave");
 		}
 	}
 	
+	// pixel of frame i and frequency unit j, the frequencies go upwards
+	private void setSpectrogramPixel(BufferedImage bufferedImage, int i, int j, double intensity){
+		int height=bufferedImage.getHeight();
+		if (i==xMarker){
+			bufferedImage.setRGB(i, height-1-j, 0xFF00);	// green
+		}
+		else{
+			int value;
+			if (j==yMarker){
+				value=0xFF0000;	// red
+			}
+			else{
+				value=255-(int)(intensity*255);
+			}
+			bufferedImage.setRGB(i, height-1-j, value<<16|value<<8|value);
+		}
+	}
+	
+	private void saveImage(BufferedImage bufferedImage, String filename){
+		try {
+			int dotPos = filename.lastIndexOf(".");
+			String extension=filename.substring(dotPos + 1);
+			ImageIO.write(bufferedImage, extension, new File(filename));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
 	/**
 	 * Set the vertical marker
 	 * 
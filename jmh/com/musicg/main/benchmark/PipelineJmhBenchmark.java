@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.benchmark;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of the PipelineBenchmark cases, one benchmark parameter per case
+ *
+ * mvn -P jmh package
+ * java -jar target/benchmarks.jar PipelineJmhBenchmark -p caseName=fingerprint/extract/song
+ * Run from the project folder, the cases read the waves under audio_work
+ * Results can be kept with -rf json -rff results.json and compared between runs
+ *
+ * The forks see java.base, java.management and jdk.unsupported (used by JMH) only, so the bundled com.sun.media.sound.FFT is not hidden by the one of java.desktop
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--limit-modules", "java.base,java.management,jdk.management,jdk.unsupported" })
+public class PipelineJmhBenchmark {
+
+	@Param({
+		"wave/parse/song", "wave/getSampleAmplitudes/song",
+		"resample/song", "resample/synthetic", "resample/polyphase-fast/song", "resample/polyphase-medium/song", "resample/polyphase-high/song",
+		"spectrogram/1024x0", "spectrogram/absolute/1024x0", "spectrogram/release/1024x0", "spectrogram/float/1024x0", "spectrogram/2048x4", "spectrogram/absolute/2048x4", "spectrogram/release/2048x4", "spectrogram/float/2048x4", "spectrogram/4096x2", "spectrogram/absolute/4096x2", "spectrogram/release/4096x2", "spectrogram/float/4096x2", "spectrogram/resample-wave/song", "spectrogram/resample-bytes/song",
+		"fft/getMagnitudes/512", "fft/getRealMagnitudes/512", "fft/getMagnitudes/2048", "fft/getRealMagnitudes/2048", "fft/getMagnitudes/8192", "fft/getRealMagnitudes/8192",
+		"kernels/window/2048", "kernels/getMagnitudes/512",
+		"fingerprint/extract/song", "fingerprint/extract/song-float", "fingerprint/extract/synthetic",
+		"pairs/getPair_PositionList_Table/song", "pairs/getPairTable/song",
+		"similarity/song-clip", "similarity/song-clip-progressive",
+		"whistle/isWhistle/whistle"
+	})
+	public String caseName;
+
+	private BenchmarkCase benchmarkCase;
+
+	@Setup
+	public void setUp() {
+		Iterator<BenchmarkCase> caseIterator = PipelineBenchmark.getCases().iterator();
+		while (caseIterator.hasNext()) {
+			BenchmarkCase nextCase = caseIterator.next();
+			if (nextCase.getName().equals(caseName)) {
+				benchmarkCase = nextCase;
+				return;
+			}
+		}
+		throw new IllegalArgumentException("PipelineJmhBenchmark: no case " + caseName);
+	}
+
+	@Benchmark
+	public Object run() {
+		return benchmarkCase.run();
+	}
+}
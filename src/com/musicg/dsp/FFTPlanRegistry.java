@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.dsp;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sun.media.sound.FFT;
+
+/**
+ * Process wide cache of fft plans, so the twiddle factors and bit reversal tables of a size are computed once
+ * The plans are not modified by transforms, so they can be shared by any number of threads
+ *
+ * @author Jacquet Wong
+ *
+ */
+public class FFTPlanRegistry {
+
+	// fftTable<(fftFrameSize,sign),fft>
+	private static final ConcurrentHashMap<Long, FFT> fftTable = new ConcurrentHashMap<Long, FFT>();
+	// realFftPlanTable<sampleSize,plan>
+	private static final ConcurrentHashMap<Integer, RealFFTPlan> realFftPlanTable = new ConcurrentHashMap<Integer, RealFFTPlan>();
+
+	private FFTPlanRegistry() {
+	}
+
+	/**
+	 * Get the complex fft of a size and sign
+	 *
+	 * @param fftFrameSize
+	 *            number of complex numbers, the value needed to be a number to power of 2
+	 * @param sign
+	 *            -1 for the forward transform, 1 for the inverse transform
+	 * @return shared fft
+	 */
+	public static FFT getFFT(int fftFrameSize, int sign) {
+		Long key = ((long) fftFrameSize << 32) | (sign & 0xFFFFFFFFL);
+		FFT fft = fftTable.get(key);
+		if (fft == null) {
+			// two threads may build the same plan, only the first one is kept
+			fft = new FFT(fftFrameSize, sign);
+			FFT existingFft = fftTable.putIfAbsent(key, fft);
+			if (existingFft != null) {
+				fft = existingFft;
+			}
+		}
+		return fft;
+	}
+
+	/**
+	 * Get the forward fft plan of a real signal
+	 *
+	 * @param sampleSize
+	 *            number of samples of the signal, the value needed to be a number to power of 2
+	 * @return shared plan
+	 */
+	public static RealFFTPlan getRealFFTPlan(int sampleSize) {
+		RealFFTPlan plan = realFftPlanTable.get(sampleSize);
+		if (plan == null) {
+			plan = new RealFFTPlan(sampleSize);
+			RealFFTPlan existingPlan = realFftPlanTable.putIfAbsent(sampleSize, plan);
+			if (existingPlan != null) {
+				plan = existingPlan;
+			}
+		}
+		return plan;
+	}
+}
@@ -28,17 +28,33 @@ public class FastFourierTransform {
 
 	/**
 	 * Get the frequency intensities
+	 * The signal is transformed as sampleSize/2 complex numbers and only the first sampleSize/4 units are kept, the fingerprints depend on this spectrum
+	 * Use getRealMagnitudes() for the full resolution spectrum of a real signal
 	 * 
 	 * @param amplitudes
 	 *            amplitudes of the signal
 	 * @return intensities of each frequency unit: mag[frequency_unit]=intensity
 	 */
 	public double[] getMagnitudes(double[] amplitudes) {
+		double[] mag = new double[amplitudes.length / 4];
+		getMagnitudes(amplitudes, mag);
+		return mag;
+	}
+
+	/**
+	 * Get the frequency intensities into an array, same as getMagnitudes(amplitudes)
+	 * 
+	 * @param amplitudes
+	 *            amplitudes of the signal, transformed in place
+	 * @param mag
+	 *            intensities of each frequency unit to be filled: mag[frequency_unit]=intensity, length of at least sampleSize/4
+	 */
+	public void getMagnitudes(double[] amplitudes, double[] mag) {
 
 		int sampleSize = amplitudes.length;
 
 		// call the fft and transform the complex numbers
-		FFT fft = new FFT(sampleSize / 2, -1);
+		FFT fft = FFTPlanRegistry.getFFT(sampleSize / 2, -1);
 		fft.transform(amplitudes);
 		// end call the fft and transform the complex numbers
 
@@ -54,11 +70,21 @@ public class FastFourierTransform {
 		// we omit the negative ones
 		int positiveSize = indexSize / 2;
 
-		double[] mag = new double[positiveSize];
-		for (int i = 0; i < indexSize; i += 2) {
-			mag[i / 2] = Math.sqrt(complexNumbers[i] * complexNumbers[i] + complexNumbers[i + 1] * complexNumbers[i + 1]);
-		}
+		SpectrumKernels.getMagnitudes(complexNumbers, mag, 0, positiveSize);
+	}
 
+	/**
+	 * Get the frequency intensities of a real signal, the signal is transformed in place
+	 * 
+	 * @param amplitudes
+	 *            amplitudes of the signal, the length needed to be a number to power of 2
+	 * @return intensities of each frequency unit from 0 to nyquist (exclusive): mag[frequency_unit]=intensity, length is sampleSize/2
+	 */
+	public double[] getRealMagnitudes(double[] amplitudes) {
+
+		int sampleSize = amplitudes.length;
+		double[] mag = new double[sampleSize / 2];
+		FFTPlanRegistry.getRealFFTPlan(sampleSize).getMagnitudes(amplitudes, mag);
 		return mag;
 	}
 
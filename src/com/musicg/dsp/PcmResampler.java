@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.dsp;
+
+/**
+ * Resample pcm bytes block by block, the source samples are decoded from the bytes when they are interpolated
+ * The resampled samples are the same as Resampler.reSample() decoded again, without the full length sample arrays in between
+ *
+ * @author Jacquet Wong
+ *
+ */
+public class PcmResampler {
+
+	private static final int SOURCE_BLOCK_SIZE = 4096; // source samples decoded at a time for the filtered resampling
+
+	private byte[] data;
+	private int bytePerSample;
+	private int numSourceSamples;
+	private int sourceRate;
+	private int targetRate;
+	private int numSamples; // number of resampled samples
+	private int numRead; // resampled samples read
+
+	// linear interpolation
+	private float lengthMultiplier;
+
+	// filtered resampling, null for the linear interpolation
+	private PolyphaseResampler polyphaseResampler;
+	private short[] sourceBlock;
+	private int numDecoded; // source samples pushed to the polyphase resampler
+	private short[] pending; // resampled samples not read yet
+	private int pendingPosition;
+
+	/**
+	 * Constructor
+	 *
+	 * @param data
+	 *            pcm data, little endian, unsigned for 8 bits
+	 * @param bitsPerSample
+	 *            how many bits represents one sample
+	 * @param sourceRate
+	 *            sample rate of the source data
+	 * @param targetRate
+	 *            sample rate of the resampled samples
+	 * @param quality
+	 *            Resampler.QUALITY_LINEAR, or PolyphaseResampler.QUALITY_FAST, QUALITY_MEDIUM or QUALITY_HIGH
+	 */
+	public PcmResampler(byte[] data, int bitsPerSample, int sourceRate, int targetRate, int quality) {
+		this.data = data;
+		this.bytePerSample = bitsPerSample / 8;
+		this.numSourceSamples = data.length / bytePerSample;
+		this.sourceRate = sourceRate;
+		this.targetRate = targetRate;
+
+		if (sourceRate == targetRate) {
+			numSamples = numSourceSamples;
+		}
+		else if (quality == Resampler.QUALITY_LINEAR) {
+			// same as LinearInterpolation
+			numSamples = (int) Math.round(((float) numSourceSamples / sourceRate * targetRate));
+			lengthMultiplier = (float) numSamples / numSourceSamples;
+		}
+		else {
+			polyphaseResampler = new PolyphaseResampler(sourceRate, targetRate, quality);
+			numSamples = (int) polyphaseResampler.getNumTargetSamples(numSourceSamples);
+			sourceBlock = new short[SOURCE_BLOCK_SIZE];
+			pending = new short[0];
+		}
+	}
+
+	/**
+	 * Number of resampled samples
+	 *
+	 * @return number of resampled samples
+	 */
+	public int getNumSamples() {
+		return numSamples;
+	}
+
+	/**
+	 * Read the next resampled samples
+	 *
+	 * @param samples
+	 *            resampled samples to be filled
+	 * @param offset
+	 *            position of the first sample in samples
+	 * @param length
+	 *            maximum number of samples to read
+	 * @return number of samples read, -1 if all samples are read
+	 */
+	public int read(short[] samples, int offset, int length) {
+		if (numRead == numSamples) {
+			return -1;
+		}
+		length = Math.min(length, numSamples - numRead);
+
+		if (sourceRate == targetRate) {
+			for (int i = 0; i < length; i++) {
+				samples[offset + i] = getSourceSample(numRead + i);
+			}
+		}
+		else if (polyphaseResampler == null) {
+			interpolate(samples, offset, length);
+		}
+		else {
+			length = readFiltered(samples, offset, length);
+		}
+
+		numRead += length;
+		return length;
+	}
+
+	// linear interpolation of the samples from numRead, same float arithmetic as LinearInterpolation
+	private void interpolate(short[] samples, int offset, int length) {
+		for (int n = 0; n < length; n++) {
+			float currentPosition = (numRead + n) / lengthMultiplier;
+			int nearestLeftPosition = (int) currentPosition;
+			int nearestRightPosition = nearestLeftPosition + 1;
+			if (nearestRightPosition >= numSourceSamples) {
+				nearestRightPosition = numSourceSamples - 1;
+			}
+
+			short leftSample = getSourceSample(nearestLeftPosition);
+			float slope = getSourceSample(nearestRightPosition) - leftSample; // delta x is 1
+			float positionFromLeft = currentPosition - nearestLeftPosition;
+
+			samples[offset + n] = (short) (slope * positionFromLeft + leftSample); // y=mx+c
+		}
+	}
+
+	// filtered samples, the source is pushed block by block until some samples are available
+	private int readFiltered(short[] samples, int offset, int length) {
+		while (pendingPosition == pending.length) {
+			if (numDecoded < numSourceSamples) {
+				int blockLength = Math.min(sourceBlock.length, numSourceSamples - numDecoded);
+				for (int i = 0; i < blockLength; i++) {
+					sourceBlock[i] = getSourceSample(numDecoded + i);
+					if (bytePerSample == 1) {
+						// unsigned 8-bit centered on 128, filtered as signed so the zero history and the overshoot are around silence
+						sourceBlock[i] -= 128;
+					}
+				}
+				numDecoded += blockLength;
+				pending = polyphaseResampler.process(sourceBlock, 0, blockLength);
+			}
+			else {
+				pending = polyphaseResampler.finish();
+			}
+			pendingPosition = 0;
+		}
+
+		length = Math.min(length, pending.length - pendingPosition);
+		for (int i = 0; i < length; i++) {
+			short sample = pending[pendingPosition++];
+			if (bytePerSample == 1) {
+				// back to unsigned, clamped rather than wrapped when stored in a byte by Resampler
+				int unsignedSample = sample + 128;
+				if (unsignedSample > 255) {
+					unsignedSample = 255;
+				} else if (unsignedSample < 0) {
+					unsignedSample = 0;
+				}
+				sample = (short) unsignedSample;
+			}
+			samples[offset + i] = sample;
+		}
+		return length;
+	}
+
+	// source sample i decoded from the bytes, same as Wave.getSampleAmplitudes()
+	private short getSourceSample(int i) {
+		int pointer = i * bytePerSample;
+		if (bytePerSample == 1) {
+			return (short) (data[pointer] & 0xFF);
+		}
+		if (bytePerSample == 2) {
+			// little endian
+			return (short) ((data[pointer] & 0xFF) | (data[pointer + 1] & 0xFF) << 8);
+		}
+		short amplitude = 0;
+		for (int byteNumber = 0; byteNumber < bytePerSample; byteNumber++) {
+			amplitude |= (short) ((data[pointer++] & 0xFF) << (byteNumber * 8));
+		}
+		return amplitude;
+	}
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.dsp;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rational resampler with a Kaiser windowed sinc low pass filter, the filter removes the frequencies above the lower nyquist frequency so the resampled signal does not alias
+ * The rates are reduced to targetRate/sourceRate=L/M, output sample k is at source position k*M/L and is filtered by one of the L phases of the filter
+ * The filter phases are computed once per (sourceRate, targetRate, quality) and shared, see getFilter()
+ *
+ * The samples can be pushed in blocks by process() and finish(), the output is the same as resample() of all samples
+ * A resampler keeps the samples of the current block, so it is not thread safe, the filters are
+ *
+ * @author Jacquet Wong
+ *
+ */
+public class PolyphaseResampler {
+
+	public static final int QUALITY_FAST = 1; // 4 zero crossings each side
+	public static final int QUALITY_MEDIUM = 2; // 12 zero crossings each side
+	public static final int QUALITY_HIGH = 3; // 32 zero crossings each side
+	public static final int MAX_PHASES = 4096; // phases of the filter, larger L are rounded to the nearest phase
+
+	// zero crossings, kaiser beta and cutoff over the lower nyquist frequency of each quality
+	private static final int[] ZERO_CROSSINGS = { 0, 4, 12, 32 };
+	private static final double[] KAISER_BETAS = { 0, 5, 7, 9 };
+	private static final double[] ROLLOFFS = { 0, 0.85, 0.9, 0.95 };
+
+	// filterTable<(sourceRate,targetRate,quality),filter>
+	private static final ConcurrentHashMap<Long, double[][]> filterTable = new ConcurrentHashMap<Long, double[][]>();
+
+	private final int upFactor; // L
+	private final int downFactor; // M
+	private final double[][] filter; // filter[phase][tap]
+	private final int numTaps; // taps of each phase
+	private final int halfTaps;
+
+	private double[] buffer; // pending source samples, buffer[0] is source sample bufferStart
+	private long bufferStart;
+	private int bufferLength;
+	private long numSourceSamples; // samples pushed
+	private long numTargetSamples; // samples emitted
+
+	/**
+	 * Constructor
+	 *
+	 * @param sourceRate
+	 *            sample rate of the source samples
+	 * @param targetRate
+	 *            sample rate of the resampled samples
+	 * @param quality
+	 *            QUALITY_FAST, QUALITY_MEDIUM or QUALITY_HIGH, a higher quality has a longer filter and is slower
+	 */
+	public PolyphaseResampler(int sourceRate, int targetRate, int quality) {
+		if (quality < QUALITY_FAST || quality > QUALITY_HIGH) {
+			System.err.println("PolyphaseResampler: unknown quality " + quality + ", QUALITY_MEDIUM is used");
+			quality = QUALITY_MEDIUM;
+		}
+		int gcd = getGcd(sourceRate, targetRate);
+		upFactor = targetRate / gcd;
+		downFactor = sourceRate / gcd;
+		filter = getFilter(sourceRate, targetRate, quality);
+		numTaps = filter[0].length;
+		halfTaps = numTaps / 2;
+		reset();
+	}
+
+	/**
+	 * Clear the pushed samples, to resample another signal
+	 */
+	public void reset() {
+		// the samples before the signal are 0
+		buffer = new double[Math.max(numTaps * 4, 4096)];
+		bufferStart = -halfTaps;
+		bufferLength = halfTaps;
+		numSourceSamples = 0;
+		numTargetSamples = 0;
+	}
+
+	/**
+	 * Resample a whole signal
+	 *
+	 * @param samples
+	 *            source samples
+	 * @return resampled samples, ceil(samples.length*targetRate/sourceRate) samples
+	 */
+	public short[] resample(short[] samples) {
+		reset();
+		ensureCapacity(samples.length + halfTaps + 1); // the whole signal is in the buffer once
+		short[] head = process(samples, 0, samples.length);
+		short[] tail = finish();
+		short[] targetSamples = new short[head.length + tail.length];
+		System.arraycopy(head, 0, targetSamples, 0, head.length);
+		System.arraycopy(tail, 0, targetSamples, head.length, tail.length);
+		return targetSamples;
+	}
+
+	/**
+	 * Push a block of source samples
+	 *
+	 * @param samples
+	 *            source samples
+	 * @param offset
+	 *            first sample of the block
+	 * @param length
+	 *            number of samples of the block
+	 * @return the resampled samples which are complete, the rest comes with the next blocks or finish()
+	 */
+	public short[] process(short[] samples, int offset, int length) {
+		ensureCapacity(length);
+		for (int i = 0; i < length; i++) {
+			buffer[bufferLength++] = samples[offset + i];
+		}
+		numSourceSamples += length;
+		return emit();
+	}
+
+	/**
+	 * End the signal, the samples after the signal are 0
+	 *
+	 * @return the remaining resampled samples
+	 */
+	public short[] finish() {
+		ensureCapacity(halfTaps + 1);
+		for (int i = 0; i <= halfTaps; i++) {
+			buffer[bufferLength++] = 0;
+		}
+		short[] tail = emit();
+		reset();
+		return tail;
+	}
+
+	/**
+	 * Number of resampled samples of a signal
+	 *
+	 * @param numSourceSamples
+	 *            number of source samples
+	 * @return ceil(numSourceSamples*targetRate/sourceRate), the number of samples of resample()
+	 */
+	public long getNumTargetSamples(long numSourceSamples) {
+		return (numSourceSamples * upFactor + downFactor - 1) / downFactor;
+	}
+
+	// emit the samples whose filter span is in the buffer
+	private short[] emit() {
+
+		long numBufferedSamples = bufferStart + bufferLength; // source samples in the buffer, with the padding
+		long numTotalTargetSamples = (numSourceSamples * upFactor + downFactor - 1) / downFactor;
+
+		// target sample k needs the source samples from floor(k*M/L)-halfTaps+1 to floor(k*M/L)+halfTaps, one more if its phase is rounded up
+		long numUsableSourceSamples = Math.max(0, numBufferedSamples - halfTaps - 1); // floor(k*M/L) must be smaller
+		long endTargetSample = Math.min(numTotalTargetSamples, (numUsableSourceSamples * upFactor + downFactor - 1) / downFactor);
+
+		int numEmitted = (int) Math.max(0, endTargetSample - numTargetSamples);
+		short[] targetSamples = new short[numEmitted];
+		int numPhases = filter.length;
+
+		for (int n = 0; n < numEmitted; n++) {
+			long position = numTargetSamples * downFactor;
+			long sourceSample = position / upFactor;
+			int phase = (int) (position % upFactor);
+			if (numPhases != upFactor) {
+				phase = (int) (((long) phase * numPhases + upFactor / 2) / upFactor);
+				if (phase == numPhases) {
+					// rounded up to the next source sample
+					phase = 0;
+					sourceSample++;
+				}
+			}
+
+			double[] coefficients = filter[phase];
+			int pointer = (int) (sourceSample - halfTaps + 1 - bufferStart);
+			double value = 0;
+			for (int m = 0; m < numTaps; m++) {
+				value += buffer[pointer + m] * coefficients[m];
+			}
+
+			long rounded = Math.round(value);
+			if (rounded > Short.MAX_VALUE) {
+				rounded = Short.MAX_VALUE;
+			} else if (rounded < Short.MIN_VALUE) {
+				rounded = Short.MIN_VALUE;
+			}
+			targetSamples[n] = (short) rounded;
+			numTargetSamples++;
+		}
+
+		compact(buffer.length / 2);
+		return targetSamples;
+	}
+
+	// drop the samples not needed by the next target sample, if there are more than minDropped
+	private void compact(int minDropped) {
+		long nextSourceSample = numTargetSamples * downFactor / upFactor;
+		int numDropped = (int) Math.max(0, nextSourceSample - halfTaps - bufferStart);
+		if (numDropped > bufferLength) {
+			numDropped = bufferLength;
+		}
+		if (numDropped > minDropped) {
+			System.arraycopy(buffer, numDropped, buffer, 0, bufferLength - numDropped);
+			bufferStart += numDropped;
+			bufferLength -= numDropped;
+		}
+	}
+
+	private void ensureCapacity(int length) {
+		if (bufferLength + length > buffer.length) {
+			compact(0);
+		}
+		if (bufferLength + length > buffer.length) {
+			double[] newBuffer = new double[Math.max(buffer.length * 2, bufferLength + length)];
+			System.arraycopy(buffer, 0, newBuffer, 0, bufferLength);
+			buffer = newBuffer;
+		}
+	}
+
+	/**
+	 * Get the shared filter of a rate pair
+	 *
+	 * @param sourceRate
+	 *            sample rate of the source samples
+	 * @param targetRate
+	 *            sample rate of the resampled samples
+	 * @param quality
+	 *            QUALITY_FAST, QUALITY_MEDIUM or QUALITY_HIGH
+	 * @return filter[phase][tap], phase p is for the target samples at p/L after a source sample
+	 */
+	public static double[][] getFilter(int sourceRate, int targetRate, int quality) {
+		Long key = ((long) sourceRate << 34) | ((long) targetRate << 2) | quality;
+		double[][] filter = filterTable.get(key);
+		if (filter == null) {
+			// two threads may build the same filter, only the first one is kept
+			filter = buildFilter(sourceRate, targetRate, quality);
+			double[][] existingFilter = filterTable.putIfAbsent(key, filter);
+			if (existingFilter != null) {
+				filter = existingFilter;
+			}
+		}
+		return filter;
+	}
+
+	private static double[][] buildFilter(int sourceRate, int targetRate, int quality) {
+
+		int gcd = getGcd(sourceRate, targetRate);
+		int upFactor = targetRate / gcd;
+		int downFactor = sourceRate / gcd;
+		int numPhases = Math.min(upFactor, MAX_PHASES);
+
+		// cutoff in cycles per source sample, below the nyquist frequency of the lower rate
+		double cutoff = 0.5 * Math.min(1, (double) upFactor / downFactor) * ROLLOFFS[quality];
+		int halfTaps = (int) Math.ceil(ZERO_CROSSINGS[quality] / (2 * cutoff));
+		int numTaps = halfTaps * 2;
+		double beta = KAISER_BETAS[quality];
+		double i0Beta = getBesselI0(beta);
+
+		double[][] filter = new double[numPhases][numTaps];
+		for (int phase = 0; phase < numPhases; phase++) {
+			double fraction = (double) phase / numPhases;
+			double sum = 0;
+			for (int m = 0; m < numTaps; m++) {
+				// distance from the target sample to source sample m-halfTaps+1
+				double distance = m - halfTaps + 1 - fraction;
+				double ratio = distance / halfTaps;
+				if (ratio <= -1 || ratio >= 1) {
+					continue;
+				}
+				double window = getBesselI0(beta * Math.sqrt(1 - ratio * ratio)) / i0Beta;
+				double x = 2 * cutoff * distance;
+				double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+				filter[phase][m] = 2 * cutoff * sinc * window;
+				sum += filter[phase][m];
+			}
+			// unity gain of each phase
+			for (int m = 0; m < numTaps; m++) {
+				filter[phase][m] /= sum;
+			}
+		}
+		return filter;
+	}
+
+	// zeroth order modified bessel function of the first kind
+	private static double getBesselI0(double x) {
+		double sum = 1;
+		double term = 1;
+		double halfX = x / 2;
+		for (int k = 1; k < 50; k++) {
+			term *= halfX / k;
+			double termSquared = term * term;
+			sum += termSquared;
+			if (termSquared < sum * 1e-17) {
+				break;
+			}
+		}
+		return sum;
+	}
+
+	private static int getGcd(int a, int b) {
+		while (b != 0) {
+			int remainder = a % b;
+			a = b;
+			b = remainder;
+		}
+		return a;
+	}
+}
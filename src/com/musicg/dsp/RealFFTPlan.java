@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.dsp;
+
+import com.sun.media.sound.FFT;
+
+/**
+ * FFT of a real signal of a fixed size
+ * The signal is packed into sampleSize/2 complex numbers, transformed by a complex fft of half size and untangled by a post-twiddle
+ * The plan holds the fft and twiddle tables only and is not modified by transforms, so it can be shared by threads, see FFTPlanRegistry
+ *
+ * @author Jacquet Wong
+ *
+ */
+public class RealFFTPlan {
+
+	private final int sampleSize;
+	private final FFT fft; // complex fft of sampleSize/2 points
+	private final double[] cosTable; // cos(2*pi*k/sampleSize), k=0..sampleSize/4
+	private final double[] sinTable; // sin(2*pi*k/sampleSize), k=0..sampleSize/4
+
+	/**
+	 * Constructor
+	 *
+	 * @param sampleSize
+	 *            number of samples of the signal, the value needed to be a number to power of 2, at least 4
+	 */
+	public RealFFTPlan(int sampleSize) {
+		this.sampleSize = sampleSize;
+		int halfSize = sampleSize / 2;
+		fft = FFTPlanRegistry.getFFT(halfSize, -1);
+
+		cosTable = new double[halfSize / 2 + 1];
+		sinTable = new double[halfSize / 2 + 1];
+		for (int k = 0; k <= halfSize / 2; k++) {
+			double angle = 2 * Math.PI * k / sampleSize;
+			cosTable[k] = Math.cos(angle);
+			sinTable[k] = Math.sin(angle);
+		}
+	}
+
+	/**
+	 * Transform a real signal in place
+	 * After the transform, amplitudes[2k] and amplitudes[2k+1] are the real and img parts of frequency unit k, k=0..sampleSize/2-1,
+	 * except amplitudes[1] which is the real part of the nyquist frequency unit (the img parts of unit 0 and nyquist are always 0)
+	 *
+	 * @param amplitudes
+	 *            amplitudes of the signal, length is sampleSize
+	 */
+	public void transform(double[] amplitudes) {
+
+		int halfSize = sampleSize / 2;
+
+		// even samples are taken as real parts, odd samples as img parts
+		fft.transform(amplitudes);
+
+		// untangle Z[k] into X[k]=E[k]+W^k*O[k] and X[halfSize-k]
+		// E[k]=(Z[k]+conj(Z[halfSize-k]))/2 is the spectrum of the even samples
+		// O[k]=(Z[k]-conj(Z[halfSize-k]))/2i is the spectrum of the odd samples
+		double z0 = amplitudes[0];
+		amplitudes[0] = z0 + amplitudes[1];
+		amplitudes[1] = z0 - amplitudes[1];
+
+		for (int k = 1; k <= halfSize / 2; k++) {
+			int i = 2 * k;
+			int j = 2 * (halfSize - k);
+
+			double evenReal = (amplitudes[i] + amplitudes[j]) / 2;
+			double evenImg = (amplitudes[i + 1] - amplitudes[j + 1]) / 2;
+			double oddReal = (amplitudes[i + 1] + amplitudes[j + 1]) / 2;
+			double oddImg = (amplitudes[j] - amplitudes[i]) / 2;
+
+			// W^k=cos-i*sin
+			double twiddledReal = cosTable[k] * oddReal + sinTable[k] * oddImg;
+			double twiddledImg = cosTable[k] * oddImg - sinTable[k] * oddReal;
+
+			// W^(halfSize-k)=-conj(W^k)
+			amplitudes[j] = evenReal - twiddledReal;
+			amplitudes[j + 1] = twiddledImg - evenImg;
+			amplitudes[i] = evenReal + twiddledReal;
+			amplitudes[i + 1] = evenImg + twiddledImg;
+		}
+	}
+
+	/**
+	 * Get the frequency intensities of a real signal, the signal is transformed in place
+	 *
+	 * @param amplitudes
+	 *            amplitudes of the signal, length is sampleSize
+	 * @param magnitudes
+	 *            intensities of each frequency unit to be filled: mag[frequency_unit]=intensity, length is sampleSize/2
+	 */
+	public void getMagnitudes(double[] amplitudes, double[] magnitudes) {
+
+		transform(amplitudes);
+
+		magnitudes[0] = Math.abs(amplitudes[0]);
+		SpectrumKernels.getMagnitudes(amplitudes, magnitudes, 1, sampleSize / 2);
+	}
+
+	/**
+	 * Number of samples of the signal
+	 *
+	 * @return sample size
+	 */
+	public int getSampleSize() {
+		return sampleSize;
+	}
+}
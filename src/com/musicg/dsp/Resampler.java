@@ -24,11 +24,31 @@ package com.musicg.dsp;
  */
 public class Resampler {
 
+	public static final int QUALITY_LINEAR = 0;	// linear interpolation without filter, the default, fingerprints are extracted with it
+
+	private static final int BLOCK_SIZE = 4096;	// samples resampled at a time
+
+	private int quality;
+
+	/**
+	 * Constructor, resample by linear interpolation
+	 */
 	public Resampler() {
+		this(QUALITY_LINEAR);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param quality	QUALITY_LINEAR, or PolyphaseResampler.QUALITY_FAST, QUALITY_MEDIUM or QUALITY_HIGH for a low pass filtered resampling
+	 */
+	public Resampler(int quality) {
+		this.quality = quality;
 	}
 
 	/**
 	 * Do resampling. Currently the amplitude is stored by short such that maximum bitsPerSample is 16 (bytePerSample is 2)
+	 * The samples are decoded, resampled and encoded block by block, see PcmResampler
 	 * 
 	 * @param sourceData	The source data in bytes
 	 * @param bitsPerSample	How many bits represents one sample (currently supports max. bitsPerSample=16) 
@@ -38,47 +58,32 @@ public class Resampler {
 	 */
 	public byte[] reSample(byte[] sourceData, int bitsPerSample, int sourceRate, int targetRate) {
 
-		// make the bytes to amplitudes first
+		PcmResampler reSample = new PcmResampler(sourceData, bitsPerSample, sourceRate, targetRate, quality);
 		int bytePerSample = bitsPerSample / 8;
-		int numSamples = sourceData.length / bytePerSample;
-		short[] amplitudes = new short[numSamples];	// 16 bit, use a short to store
-		
-		int pointer = 0;
-		for (int i = 0; i < numSamples; i++) {
-			short amplitude = 0;
-			for (int byteNumber = 0; byteNumber < bytePerSample; byteNumber++) {
-				// little endian
-				amplitude |= (short) ((sourceData[pointer++] & 0xFF) << (byteNumber * 8));
-			}
-			amplitudes[i] = amplitude;
-		}
-		// end make the amplitudes
+		int targetLength = reSample.getNumSamples();
 		
-		// do interpolation
-		LinearInterpolation reSample=new LinearInterpolation();
-		short[] targetSample = reSample.interpolate(sourceRate, targetRate, amplitudes);
-		int targetLength = targetSample.length;
-		// end do interpolation
-		
-		// TODO: Remove the high frequency signals with a digital filter, leaving a signal containing only half-sample-rated frequency information, but still sampled at a rate of target sample rate. Usually FIR is used
-		
-		// end resample the amplitudes
-
 		// convert the amplitude to bytes
 		byte[] bytes;
+		short[] targetSample = new short[BLOCK_SIZE];
+		int pointer = 0;
+		int numRead;
 		if (bytePerSample==1){
 			bytes= new byte[targetLength];
-			for (int i=0; i<targetLength; i++){
-				bytes[i]=(byte)targetSample[i];
+			while ((numRead = reSample.read(targetSample, 0, targetSample.length)) >= 0) {
+				for (int i=0; i<numRead; i++){
+					bytes[pointer++]=(byte)targetSample[i];
+				}
 			}
 		}
 		else{
 			// suppose bytePerSample==2
 			bytes= new byte[targetLength*2];
-			for (int i=0; i<targetSample.length; i++){				
-				// little endian			
-				bytes[i*2] = (byte)(targetSample[i] & 0xff);
-				bytes[i*2+1] = (byte)((targetSample[i] >> 8) & 0xff);			
+			while ((numRead = reSample.read(targetSample, 0, targetSample.length)) >= 0) {
+				for (int i=0; i<numRead; i++){
+					// little endian
+					bytes[pointer++] = (byte)(targetSample[i] & 0xff);
+					bytes[pointer++] = (byte)((targetSample[i] >> 8) & 0xff);
+				}
 			}
 		}
 		// end convert the amplitude to bytes
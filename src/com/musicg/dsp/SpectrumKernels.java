@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.dsp;
+
+/**
+ * Inner loops of the spectrogram, written as simple counted loops over contiguous arrays so the jit can compile them to simd instructions
+ * Strided or converting steps are split into their own loop, the results are the same as the one loop versions
+ *
+ * @author Jacquet Wong
+ *
+ */
+public class SpectrumKernels {
+
+	private SpectrumKernels() {
+	}
+
+	/**
+	 * Window a frame of samples: signal[n]=amplitudes[offset+n]*window[n]
+	 *
+	 * @param amplitudes
+	 *            samples
+	 * @param offset
+	 *            first sample of the frame
+	 * @param window
+	 *            window function, length is the frame size
+	 * @param signal
+	 *            windowed frame to be filled, length is the frame size
+	 */
+	public static void window(short[] amplitudes, int offset, double[] window, double[] signal) {
+		int frameSize = window.length;
+
+		// short to double conversion first, then a plain multiply
+		for (int n = 0; n < frameSize; n++) {
+			signal[n] = amplitudes[offset + n];
+		}
+		for (int n = 0; n < frameSize; n++) {
+			signal[n] *= window[n];
+		}
+	}
+
+	/**
+	 * Get the magnitudes of complex numbers: magnitudes[k]=sqrt(real[k]^2+img[k]^2), k=fromUnit..toUnit-1
+	 *
+	 * @param complexNumbers
+	 *            interleaved complex numbers, complexNumbers[2k] is the real part and complexNumbers[2k+1] is the img part of number k
+	 * @param magnitudes
+	 *            magnitudes to be filled
+	 * @param fromUnit
+	 *            first number (inclusive)
+	 * @param toUnit
+	 *            last number (exclusive)
+	 */
+	public static void getMagnitudes(double[] complexNumbers, double[] magnitudes, int fromUnit, int toUnit) {
+
+		// the squared magnitudes are gathered from the interleaved parts, then square rooted in a contiguous loop
+		for (int k = fromUnit; k < toUnit; k++) {
+			double real = complexNumbers[2 * k];
+			double img = complexNumbers[2 * k + 1];
+			magnitudes[k] = real * real + img * img;
+		}
+		for (int k = fromUnit; k < toUnit; k++) {
+			magnitudes[k] = Math.sqrt(magnitudes[k]);
+		}
+	}
+}
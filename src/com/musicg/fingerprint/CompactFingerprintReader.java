@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.fingerprint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Read fingerprints written by CompactFingerprintWriter, fingerprint bytes (the 8 bytes per point layout) are read as well
+ *
+ * @author jacquet
+ *
+ */
+public class CompactFingerprintReader{
+
+	private byte[] data;
+	private int pointer;
+
+	/**
+	 * Check the fingerprint is in the compact format or not
+	 *
+	 * @param fingerprint	compact fingerprint or fingerprint bytes
+	 * @return true if it starts with CompactFingerprintWriter.MAGIC
+	 */
+	public static boolean isCompact(byte[] fingerprint){
+		if (fingerprint.length<4){
+			return false;
+		}
+		int magic=(int)(fingerprint[0]&0xff)<<24 | (int)(fingerprint[1]&0xff)<<16 | (int)(fingerprint[2]&0xff)<<8 | (int)(fingerprint[3]&0xff);
+		return magic==CompactFingerprintWriter.MAGIC;
+	}
+
+	/**
+	 * Read the points of a fingerprint
+	 *
+	 * @param fingerprint	compact fingerprint or fingerprint bytes
+	 * @return points, null if the compact fingerprint is invalid
+	 */
+	public FingerprintPoints read(byte[] fingerprint){
+		if (!isCompact(fingerprint)){
+			return FingerprintPoints.fromBytes(fingerprint);
+		}
+
+		data=fingerprint;
+		pointer=4;
+		try {
+			return readPoints();
+		} catch (ArrayIndexOutOfBoundsException e) {
+			System.err.println("CompactFingerprintReader: fingerprint is truncated");
+			return null;
+		} finally {
+			data=null;
+		}
+	}
+
+	/**
+	 * Read the points of a fingerprint from an input stream until its end
+	 *
+	 * @param inputStream	compact fingerprint or fingerprint bytes, not closed
+	 * @return points, null if the compact fingerprint is invalid
+	 * @throws IOException
+	 */
+	public FingerprintPoints read(InputStream inputStream) throws IOException{
+		ByteArrayOutputStream outputStream=new ByteArrayOutputStream();
+		byte[] buffer=new byte[8192];
+		int numRead;
+		while ((numRead=inputStream.read(buffer))>=0){
+			outputStream.write(buffer, 0, numRead);
+		}
+		return read(outputStream.toByteArray());
+	}
+
+	/**
+	 * Read a fingerprint as fingerprint bytes, e.g. for FingerprintSimilarityComputer
+	 *
+	 * @param fingerprint	compact fingerprint or fingerprint bytes
+	 * @return fingerprint bytes, null if the compact fingerprint is invalid or has more than 65536 frames
+	 */
+	public byte[] readBytes(byte[] fingerprint){
+		if (!isCompact(fingerprint)){
+			return fingerprint;
+		}
+		FingerprintPoints fingerprintPoints=read(fingerprint);
+		if (fingerprintPoints==null){
+			return null;
+		}
+		return fingerprintPoints.toBytes();
+	}
+
+	private FingerprintPoints readPoints(){
+
+		int version=data[pointer++];
+		if (version!=CompactFingerprintWriter.VERSION){
+			System.err.println("CompactFingerprintReader: unsupported version "+version);
+			return null;
+		}
+		int intensityBits=data[pointer++];
+		int numFilterBanks=readVarint();
+		int bandwidthPerBank=readVarint();
+		int numPoints=readVarint();
+
+		// intensities are restored to the middle of their quantization step
+		int intensityShift=CompactFingerprintWriter.MAX_INTENSITY_BITS-intensityBits;
+		int intensityRounding=(1<<intensityShift)>>>1;
+
+		int[] frames=new int[numPoints];
+		int[] frequencyUnits=new int[numPoints];
+		int[] intensities=new int[numPoints];
+
+		int frame=-1;
+		int count=0;
+		while (count<numPoints){
+			int frameHeader=readVarint();
+			frame+=(frameHeader>>>1)+1;
+
+			if ((frameHeader&1)==CompactFingerprintWriter.MODE_BANK_MASK){
+				int bankMask=readVarint();
+				for (int bank=0; bank<numFilterBanks; bank++){
+					if ((bankMask&(1<<bank))!=0){
+						frames[count]=frame;
+						frequencyUnits[count]=bank*bandwidthPerBank+readVarint();
+						intensities[count]=readIntensity(intensityBits)<<intensityShift | intensityRounding;
+						count++;
+					}
+				}
+			}
+			else{
+				int numFramePoints=readVarint();
+				int y=0;
+				for (int i=0; i<numFramePoints; i++){
+					y+=readVarint();
+					frames[count]=frame;
+					frequencyUnits[count]=y;
+					intensities[count]=readIntensity(intensityBits)<<intensityShift | intensityRounding;
+					count++;
+				}
+			}
+		}
+
+		return new FingerprintPoints(frames, frequencyUnits, intensities, numPoints);
+	}
+
+	private int readIntensity(int intensityBits){
+		if (intensityBits<=8){
+			return data[pointer++]&0xff;
+		}
+		return readVarint();
+	}
+
+	private int readVarint(){
+		int value=0;
+		int shift=0;
+		int b;
+		do {
+			b=data[pointer++];
+			value|=(b&0x7F)<<shift;
+			shift+=7;
+		} while ((b&0x80)!=0);
+		return value;
+	}
+}
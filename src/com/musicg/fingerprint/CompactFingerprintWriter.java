@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.fingerprint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.musicg.properties.FingerprintProperties;
+
+/**
+ * Write fingerprints in the compact format, read by CompactFingerprintReader
+ *
+ * Layout, varints are unsigned LEB128:
+ * header: MAGIC (4 bytes), VERSION (1 byte), intensityBits (1 byte), numFilterBanks (varint), bandwidthPerBank (varint), numPoints (varint)
+ * then for each frame having points: (frameDelta<<1 | mode) (varint), frameDelta is the frame minus the previous frame having points minus 1
+ * mode 0, at most one point per filter bank: bankMask (varint), then for each bank in the mask: y minus the bank start (varint), intensity
+ * mode 1, otherwise: numPoints (varint), then for each point: y minus the previous y in the frame (varint), intensity
+ * intensity is the top intensityBits bits of the intensity, 1 byte when intensityBits<=8, else varint
+ *
+ * With the default fingerprint properties a point takes 2-3 bytes instead of 8
+ * The intensities are only used to order the points in pairing, so quantized intensities change the pairs slightly, use 31 bits for lossless
+ *
+ * @author jacquet
+ *
+ */
+public class CompactFingerprintWriter{
+
+	public static final int MAGIC=0x4d474650;	// "MGFP", the 3rd byte is larger than any y of the fingerprint bytes, so the formats cannot be mixed up
+	public static final int VERSION=1;
+	public static final int DEFAULT_INTENSITY_BITS=8;
+	public static final int MAX_INTENSITY_BITS=31;
+
+	static final int MODE_BANK_MASK=0;
+	static final int MODE_Y_DELTA=1;
+	static final int MAX_MASK_BANKS=31;	// banks fitting in the bank mask
+
+	private FingerprintProperties fingerprintProperties=FingerprintProperties.getInstance();
+	private int numFilterBanks=fingerprintProperties.getNumFilterBanks();
+	private int bandwidthPerBank=fingerprintProperties.getNumSpectrogramFrequencyUnits()/numFilterBanks;	// the banks of FilterBankPeakProcessor in the spectrogram row
+	private int intensityBits;
+	private int numBankMaskFrames;	// frames written in mode 0 by the last write
+	private int numYDeltaFrames;	// frames written in mode 1 by the last write
+
+	/**
+	 * Constructor, intensities are quantized to DEFAULT_INTENSITY_BITS bits
+	 */
+	public CompactFingerprintWriter(){
+		this(DEFAULT_INTENSITY_BITS);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param intensityBits	bits kept of each intensity, 1 to 31, 31 is lossless
+	 */
+	public CompactFingerprintWriter(int intensityBits){
+		if (intensityBits<1 || intensityBits>MAX_INTENSITY_BITS){
+			System.err.println("CompactFingerprintWriter: intensity bits must be 1 to "+MAX_INTENSITY_BITS);
+			intensityBits=DEFAULT_INTENSITY_BITS;
+		}
+		this.intensityBits=intensityBits;
+	}
+
+	/**
+	 * Write fingerprint bytes in the compact format
+	 *
+	 * @param fingerprint	fingerprint bytes
+	 * @return compact fingerprint, null if the points are not ordered
+	 */
+	public byte[] write(byte[] fingerprint){
+		return write(FingerprintPoints.fromBytes(fingerprint));
+	}
+
+	/**
+	 * Write fingerprint points in the compact format
+	 *
+	 * @param fingerprintPoints	points ordered by frame, then by frequency unit
+	 * @return compact fingerprint, null if the points are not ordered
+	 */
+	public byte[] write(FingerprintPoints fingerprintPoints){
+		VarintBuffer buffer=encode(fingerprintPoints);
+		if (buffer==null){
+			return null;
+		}
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * Write fingerprint points in the compact format
+	 *
+	 * @param fingerprintPoints	points ordered by frame, then by frequency unit
+	 * @param outputStream	stream to be written, not closed
+	 * @return false if the points are not ordered, nothing is written
+	 * @throws IOException
+	 */
+	public boolean write(FingerprintPoints fingerprintPoints, OutputStream outputStream) throws IOException{
+		VarintBuffer buffer=encode(fingerprintPoints);
+		if (buffer==null){
+			return false;
+		}
+		buffer.writeTo(outputStream);
+		return true;
+	}
+
+	/**
+	 * Get the number of frames written with a bank mask, i.e. at most one point per filter bank, by the last write
+	 *
+	 * @return number of mode 0 frames
+	 */
+	public int getNumBankMaskFrames(){
+		return numBankMaskFrames;
+	}
+
+	/**
+	 * Get the number of frames written with y deltas, i.e. several points in a filter bank, by the last write
+	 *
+	 * @return number of mode 1 frames
+	 */
+	public int getNumYDeltaFrames(){
+		return numYDeltaFrames;
+	}
+
+	private VarintBuffer encode(FingerprintPoints fingerprintPoints){
+
+		numBankMaskFrames=0;
+		numYDeltaFrames=0;
+		int numPoints=fingerprintPoints.getNumPoints();
+		int[] frames=fingerprintPoints.getFrames();
+		int[] frequencyUnits=fingerprintPoints.getFrequencyUnits();
+		int[] intensities=fingerprintPoints.getIntensities();
+
+		for (int i=1; i<numPoints; i++){
+			if (frames[i]<frames[i-1] || (frames[i]==frames[i-1] && frequencyUnits[i]<frequencyUnits[i-1])){
+				System.err.println("CompactFingerprintWriter: points are not ordered by frame and frequency unit");
+				return null;
+			}
+		}
+
+		VarintBuffer buffer=new VarintBuffer(numPoints*3+16);
+
+		// header
+		buffer.writeByte(MAGIC>>24);
+		buffer.writeByte(MAGIC>>16);
+		buffer.writeByte(MAGIC>>8);
+		buffer.writeByte(MAGIC);
+		buffer.writeByte(VERSION);
+		buffer.writeByte(intensityBits);
+		buffer.writeVarint(numFilterBanks);
+		buffer.writeVarint(bandwidthPerBank);
+		buffer.writeVarint(numPoints);
+
+		int previousFrame=-1;
+		int start=0;
+		while (start<numPoints){
+			int frame=frames[start];
+			int end=start+1;
+			while (end<numPoints && frames[end]==frame){
+				end++;
+			}
+
+			int bankMask=getBankMask(frequencyUnits, start, end);
+			int frameDelta=frame-previousFrame-1;
+
+			if (bankMask!=0){
+				buffer.writeVarint(frameDelta<<1 | MODE_BANK_MASK);
+				numBankMaskFrames++;
+				buffer.writeVarint(bankMask);
+				for (int i=start; i<end; i++){
+					buffer.writeVarint(frequencyUnits[i]%bandwidthPerBank);
+					writeIntensity(buffer, intensities[i]);
+				}
+			}
+			else{
+				buffer.writeVarint(frameDelta<<1 | MODE_Y_DELTA);
+				numYDeltaFrames++;
+				buffer.writeVarint(end-start);
+				int previousY=0;
+				for (int i=start; i<end; i++){
+					buffer.writeVarint(frequencyUnits[i]-previousY);
+					previousY=frequencyUnits[i];
+					writeIntensity(buffer, intensities[i]);
+				}
+			}
+
+			previousFrame=frame;
+			start=end;
+		}
+
+		return buffer;
+	}
+
+	// mask of the banks of the points, 0 if two points are in the same bank or a point is out of the banks
+	private int getBankMask(int[] frequencyUnits, int start, int end){
+		if (numFilterBanks>MAX_MASK_BANKS){
+			return 0;
+		}
+		int bankMask=0;
+		for (int i=start; i<end; i++){
+			int bank=frequencyUnits[i]/bandwidthPerBank;
+			if (bank>=numFilterBanks || (bankMask&(1<<bank))!=0){
+				return 0;
+			}
+			bankMask|=1<<bank;
+		}
+		return bankMask;
+	}
+
+	private void writeIntensity(VarintBuffer buffer, int intensity){
+		int quantizedIntensity=Math.max(intensity, 0)>>>(MAX_INTENSITY_BITS-intensityBits);
+		if (intensityBits<=8){
+			buffer.writeByte(quantizedIntensity);
+		}
+		else{
+			buffer.writeVarint(quantizedIntensity);
+		}
+	}
+
+	// growable byte array with varint writing
+	private static class VarintBuffer{
+
+		private byte[] bytes;
+		private int size;
+
+		VarintBuffer(int capacity){
+			bytes=new byte[capacity];
+		}
+
+		void writeByte(int value){
+			if (size==bytes.length){
+				byte[] newBytes=new byte[bytes.length*2];
+				System.arraycopy(bytes, 0, newBytes, 0, size);
+				bytes=newBytes;
+			}
+			bytes[size++]=(byte)value;
+		}
+
+		void writeVarint(int value){
+			while ((value&~0x7F)!=0){
+				writeByte((value&0x7F)|0x80);
+				value>>>=7;
+			}
+			writeByte(value);
+		}
+
+		void writeTo(OutputStream outputStream) throws IOException{
+			outputStream.write(bytes, 0, size);
+		}
+
+		byte[] toByteArray(){
+			byte[] result=new byte[size];
+			System.arraycopy(bytes, 0, result, 0, size);
+			return result;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.fingerprint;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing table of int counts keyed by long, without boxing
+ * A missing key has the count 0, Long.MIN_VALUE is not a valid key
+ *
+ * @author jacquet
+ *
+ */
+class CountTable{
+
+	private static final long EMPTY=Long.MIN_VALUE;
+	private static final int MIN_CAPACITY=16;
+
+	private long[] keys;
+	private int[] counts;
+	private int size;
+	private int shift;	// 64-log2(capacity), the hash is the high bits of the mixed key
+
+	/**
+	 * Constructor
+	 *
+	 * @param expectedSize	number of keys expected, the table grows beyond it
+	 */
+	public CountTable(int expectedSize){
+		int capacity=MIN_CAPACITY;
+		while (capacity<expectedSize*2){
+			capacity<<=1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity){
+		keys=new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		counts=new int[capacity];
+		shift=64-Integer.numberOfTrailingZeros(capacity);
+		size=0;
+	}
+
+	// slot of the key, or the empty slot where it is to be added
+	private int getSlot(long key){
+		int mask=keys.length-1;
+		int slot=(int)((key*0x9E3779B97F4A7C15L)>>>shift);
+		while (keys[slot]!=EMPTY && keys[slot]!=key){
+			slot=(slot+1)&mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Add to the count of a key
+	 *
+	 * @param key	key of the count
+	 * @param delta	value added to the count
+	 * @return new count
+	 */
+	public int add(long key, int delta){
+		int slot=getSlot(key);
+		if (keys[slot]==EMPTY){
+			if (size*2>=keys.length){
+				grow();
+				slot=getSlot(key);
+			}
+			keys[slot]=key;
+			size++;
+		}
+		counts[slot]+=delta;
+		return counts[slot];
+	}
+
+	/**
+	 * Get the count of a key
+	 *
+	 * @param key	key of the count
+	 * @return count, 0 if the key is missing
+	 */
+	public int get(long key){
+		int slot=getSlot(key);
+		return keys[slot]==EMPTY?0:counts[slot];
+	}
+
+	private void grow(){
+		long[] oldKeys=keys;
+		int[] oldCounts=counts;
+		allocate(oldKeys.length*2);
+		for (int i=0; i<oldKeys.length; i++){
+			if (oldKeys[i]!=EMPTY){
+				int slot=getSlot(oldKeys[i]);
+				keys[slot]=oldKeys[i];
+				counts[slot]=oldCounts[i];
+				size++;
+			}
+		}
+	}
+
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Number of slots, the keys are iterated by the slots from 0 to getCapacity()-1
+	 *
+	 * @return number of slots
+	 */
+	public int getCapacity(){
+		return keys.length;
+	}
+
+	public boolean isUsed(int slot){
+		return keys[slot]!=EMPTY;
+	}
+
+	public long getKey(int slot){
+		return keys[slot];
+	}
+
+	public int getCount(int slot){
+		return counts[slot];
+	}
+}
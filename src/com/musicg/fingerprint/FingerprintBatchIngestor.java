@@ -0,0 +1,433 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.fingerprint;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.musicg.wave.Wave;
+
+/**
+ * Fingerprint a catalog of wave files into a FingerprintIndex
+ * The tracks pass through the stages read -> extract (resample, spectrogram, robust points) -> pair -> write,
+ * each stage has its own workers and the stages are connected by bounded queues, so a slow stage blocks the stages before it
+ * and at most queueCapacity tracks are waiting between two stages
+ *
+ * Usage: submit() every track, then finish() and save or search the index
+ * 
+ * A track failing to be read or extracted is dropped and counted as a failure of its stage
+ * A failure in pairing or writing stops the pipeline and is thrown by finish(), the index may hold part of a track and has to be rebuilt
+ *
+ * @author jacquet
+ *
+ */
+public class FingerprintBatchIngestor{
+
+	public static final int DEFAULT_QUEUE_CAPACITY=16;
+
+	private static final IngestTrack END_OF_TRACKS=new IngestTrack(-1, null);	// tells a worker its stage is drained
+
+	private FingerprintIndex fingerprintIndex;
+	private BlockingQueue<IngestTrack> fileQueue;
+	private Stage[] stages;
+	private Thread[] workers;
+	private AtomicReference<Throwable> failure=new AtomicReference<Throwable>();	// the failure which stopped the pipeline
+	private boolean started;
+	private boolean finished;
+	private long startTime;
+	private long elapsedNanos;
+
+	/**
+	 * Constructor, one reader, one pair worker per 4 cores and one extract worker per core
+	 *
+	 * @param fingerprintIndex	index to be written, must not be used by others until finish() returns
+	 */
+	public FingerprintBatchIngestor(FingerprintIndex fingerprintIndex){
+		this(fingerprintIndex, 1, Runtime.getRuntime().availableProcessors(), Math.max(1, Runtime.getRuntime().availableProcessors()/4), DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param fingerprintIndex	index to be written, must not be used by others until finish() returns
+	 * @param numReaders	number of threads reading the wave files
+	 * @param numExtractors	number of threads extracting the fingerprints
+	 * @param numPairers	number of threads pairing the fingerprints
+	 * @param queueCapacity	number of tracks waiting between two stages
+	 */
+	public FingerprintBatchIngestor(FingerprintIndex fingerprintIndex, int numReaders, int numExtractors, int numPairers, int queueCapacity){
+		this.fingerprintIndex=fingerprintIndex;
+
+		fileQueue=new ArrayBlockingQueue<IngestTrack>(queueCapacity);
+		BlockingQueue<IngestTrack> waveQueue=new ArrayBlockingQueue<IngestTrack>(queueCapacity);
+		BlockingQueue<IngestTrack> fingerprintQueue=new ArrayBlockingQueue<IngestTrack>(queueCapacity);
+		BlockingQueue<IngestTrack> pairQueue=new ArrayBlockingQueue<IngestTrack>(queueCapacity);
+
+		// the index is not thread safe for adding, so there is only one writer
+		stages=new Stage[4];
+		stages[0]=new ReadStage(numReaders, fileQueue, waveQueue);
+		stages[1]=new ExtractStage(numExtractors, waveQueue, fingerprintQueue);
+		stages[2]=new PairStage(numPairers, fingerprintQueue, pairQueue, fingerprintIndex.getPairHash());
+		stages[3]=new WriteStage(1, pairQueue, null);
+		for (int i=0; i<stages.length; i++){
+			stages[i].pipelineFailure=failure;
+			if (i<stages.length-1){
+				stages[i].nextStage=stages[i+1];
+			}
+		}
+	}
+
+	/**
+	 * Submit a track, blocks while the read stage is full
+	 * Tracks can be submitted by several threads, a track submitted after finish() is rejected
+	 *
+	 * @param trackId	id of the track, must be unique in the index
+	 * @param filename	wave file of the track
+	 */
+	public synchronized void submit(int trackId, String filename){
+		if (finished){
+			System.err.println("FingerprintBatchIngestor: track "+trackId+" submitted after finish");
+			return;
+		}
+		start();
+		try {
+			fileQueue.put(new IngestTrack(trackId, filename));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Wait until all submitted tracks are written to the index
+	 *
+	 * @throws IllegalStateException if a track failed in pairing or writing, the failure is the cause
+	 */
+	public synchronized void finish(){
+		if (finished){
+			return;
+		}
+		start();
+		finished=true;
+		try {
+			stages[0].signalEnd();
+			for (int i=0; i<workers.length; i++){
+				workers[i].join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			e.printStackTrace();
+		}
+		elapsedNanos=System.nanoTime()-startTime;
+
+		Throwable pipelineFailure=failure.get();
+		if (pipelineFailure instanceof Error){
+			throw (Error)pipelineFailure;
+		}
+		if (pipelineFailure!=null){
+			throw new IllegalStateException("FingerprintBatchIngestor: the pipeline is stopped by a failure, the index may hold part of a track", pipelineFailure);
+		}
+	}
+
+	// called by submit() and finish() only, which hold the lock
+	private void start(){
+		if (started){
+			return;
+		}
+		started=true;
+		startTime=System.nanoTime();
+
+		int numWorkers=0;
+		for (int i=0; i<stages.length; i++){
+			numWorkers+=stages[i].numWorkers;
+		}
+		workers=new Thread[numWorkers];
+		int pointer=0;
+		for (int i=0; i<stages.length; i++){
+			for (int j=0; j<stages[i].numWorkers; j++){
+				workers[pointer]=new Thread(stages[i], "FingerprintBatchIngestor-"+stages[i].counter.getName()+"-"+j);
+				workers[pointer].setDaemon(true);
+				workers[pointer].start();
+				pointer++;
+			}
+		}
+	}
+
+	public StageCounter getReadCounter(){
+		return stages[0].counter;
+	}
+
+	public StageCounter getExtractCounter(){
+		return stages[1].counter;
+	}
+
+	public StageCounter getPairCounter(){
+		return stages[2].counter;
+	}
+
+	public StageCounter getWriteCounter(){
+		return stages[3].counter;
+	}
+
+	/**
+	 * Wall time from the first submit to the end of finish()
+	 *
+	 * @return elapsed time in nanoseconds
+	 */
+	public long getElapsedNanos(){
+		return elapsedNanos;
+	}
+
+	/**
+	 * Throughput counters of an ingestion stage, updated by its workers
+	 */
+	public static class StageCounter{
+
+		private String name;
+		private AtomicLong numTracks=new AtomicLong();
+		private AtomicLong numFailures=new AtomicLong();
+		private AtomicLong busyNanos=new AtomicLong();	// time spent on the tracks, summed over the workers
+		private AtomicLong blockedNanos=new AtomicLong();	// time waiting for the next stage to accept a track, summed over the workers
+
+		StageCounter(String name){
+			this.name=name;
+		}
+
+		public String getName(){
+			return name;
+		}
+
+		/**
+		 * Number of tracks passed to the next stage
+		 *
+		 * @return number of tracks
+		 */
+		public long getNumTracks(){
+			return numTracks.get();
+		}
+
+		/**
+		 * Number of tracks dropped by this stage
+		 *
+		 * @return number of tracks
+		 */
+		public long getNumFailures(){
+			return numFailures.get();
+		}
+
+		public long getBusyNanos(){
+			return busyNanos.get();
+		}
+
+		public long getBlockedNanos(){
+			return blockedNanos.get();
+		}
+
+		/**
+		 * Tracks processed per second of one worker
+		 *
+		 * @return tracks per second
+		 */
+		public double getTracksPerWorkerSecond(){
+			long nanos=busyNanos.get();
+			if (nanos==0){
+				return 0;
+			}
+			return (numTracks.get()+numFailures.get())*1000000000d/nanos;
+		}
+
+		public String toString(){
+			return name+": "+numTracks.get()+" tracks, "+numFailures.get()+" failed, "
+					+(float)getTracksPerWorkerSecond()+" tracks/s per worker, "
+					+busyNanos.get()/1000000+" ms busy, "+blockedNanos.get()/1000000+" ms blocked";
+		}
+	}
+
+	// a track moving through the stages, the data of a finished stage is released
+	private static class IngestTrack{
+		int trackId;
+		String filename;
+		Wave wave;
+		FingerprintPoints fingerprintPoints;
+		PairTable pairTable;
+
+		IngestTrack(int trackId, String filename){
+			this.trackId=trackId;
+			this.filename=filename;
+		}
+	}
+
+	private static abstract class Stage implements Runnable{
+
+		int numWorkers;
+		BlockingQueue<IngestTrack> inputQueue;
+		BlockingQueue<IngestTrack> outputQueue;
+		Stage nextStage;
+		StageCounter counter;
+		AtomicReference<Throwable> pipelineFailure;
+		private boolean isFailureDropped;	// a failed track is dropped, otherwise the failure stops the pipeline
+		private AtomicInteger numRunningWorkers;
+
+		Stage(String name, int numWorkers, BlockingQueue<IngestTrack> inputQueue, BlockingQueue<IngestTrack> outputQueue, boolean isFailureDropped){
+			this.isFailureDropped=isFailureDropped;
+			this.numWorkers=Math.max(1, numWorkers);
+			this.inputQueue=inputQueue;
+			this.outputQueue=outputQueue;
+			counter=new StageCounter(name);
+			numRunningWorkers=new AtomicInteger(this.numWorkers);
+		}
+
+		/**
+		 * Process a track
+		 *
+		 * @return false if the track is dropped
+		 */
+		abstract boolean process(IngestTrack track);
+
+		public void run(){
+			try {
+				IngestTrack track;
+				while ((track=inputQueue.take())!=END_OF_TRACKS){
+					// once stopped, the tracks are drained without processing so the stages before never block
+					if (pipelineFailure.get()!=null){
+						counter.numFailures.incrementAndGet();
+						continue;
+					}
+
+					long startTime=System.nanoTime();
+					boolean processed;
+					Throwable trackFailure=null;
+					try {
+						processed=process(track);
+					} catch (Exception e) {
+						trackFailure=e;
+						processed=false;
+					} catch (OutOfMemoryError e) {
+						// e.g. a long wave, the memory of the track is released with it
+						trackFailure=e;
+						processed=false;
+					} catch (Throwable e) {
+						trackFailure=e;
+						processed=false;
+						pipelineFailure.compareAndSet(null, e);
+					}
+					long endTime=System.nanoTime();
+					counter.busyNanos.addAndGet(endTime-startTime);
+
+					if (trackFailure!=null){
+						if (isFailureDropped){
+							trackFailure.printStackTrace();
+						}
+						else{
+							pipelineFailure.compareAndSet(null, trackFailure);
+						}
+					}
+
+					if (!processed){
+						counter.numFailures.incrementAndGet();
+						continue;
+					}
+					if (outputQueue!=null){
+						outputQueue.put(track);
+						counter.blockedNanos.addAndGet(System.nanoTime()-endTime);
+					}
+					counter.numTracks.incrementAndGet();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				e.printStackTrace();
+			} finally {
+				// the last worker of the stage drains the next stage, even if a worker dies
+				if (numRunningWorkers.decrementAndGet()==0 && nextStage!=null){
+					try {
+						nextStage.signalEnd();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+
+		// one end marker per worker
+		void signalEnd() throws InterruptedException{
+			for (int i=0; i<numWorkers; i++){
+				inputQueue.put(END_OF_TRACKS);
+			}
+		}
+	}
+
+	private static class ReadStage extends Stage{
+
+		ReadStage(int numWorkers, BlockingQueue<IngestTrack> inputQueue, BlockingQueue<IngestTrack> outputQueue){
+			super("read", numWorkers, inputQueue, outputQueue, true);
+		}
+
+		boolean process(IngestTrack track){
+			Wave wave=new Wave(track.filename);
+			if (wave.getWaveHeader()==null || !wave.getWaveHeader().isValid()){
+				System.err.println("FingerprintBatchIngestor: cannot read "+track.filename);
+				return false;
+			}
+			track.wave=wave;
+			return true;
+		}
+	}
+
+	private static class ExtractStage extends Stage{
+
+		ExtractStage(int numWorkers, BlockingQueue<IngestTrack> inputQueue, BlockingQueue<IngestTrack> outputQueue){
+			super("extract", numWorkers, inputQueue, outputQueue, true);
+		}
+
+		boolean process(IngestTrack track){
+			FingerprintManager fingerprintManager=new FingerprintManager();
+			track.fingerprintPoints=fingerprintManager.extractFingerprintPoints(track.wave);
+			track.wave=null;
+			return true;
+		}
+	}
+
+	private static class PairStage extends Stage{
+
+		private PairHash pairHash;	// the one of the index written
+
+		PairStage(int numWorkers, BlockingQueue<IngestTrack> inputQueue, BlockingQueue<IngestTrack> outputQueue, PairHash pairHash){
+			super("pair", numWorkers, inputQueue, outputQueue, false);
+			this.pairHash=pairHash;
+		}
+
+		boolean process(IngestTrack track){
+			PairManager pairManager=new PairManager(true, pairHash);
+			track.pairTable=pairManager.getPairTable(track.fingerprintPoints);
+			return true;
+		}
+	}
+
+	private class WriteStage extends Stage{
+
+		WriteStage(int numWorkers, BlockingQueue<IngestTrack> inputQueue, BlockingQueue<IngestTrack> outputQueue){
+			super("write", numWorkers, inputQueue, outputQueue, false);
+		}
+
+		boolean process(IngestTrack track){
+			return fingerprintIndex.addPairTable(track.trackId, track.fingerprintPoints.getNumFrames(), track.pairTable);
+		}
+	}
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.fingerprint;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+/**
+ * Inverted index of reference fingerprints
+ * The pair hashcodes of every reference fingerprint are stored once, each hashcode maps to the postings (trackId, frame) having the same pair
+ * A clip is then searched against all the indexed tracks in one pass, by counting the frame offsets of the matched pairs per track
+ *
+ * The index is not thread safe for adding, but can be searched by multiple threads after all fingerprints are added
+ *
+ * @author jacquet
+ *
+ */
+public class FingerprintIndex extends FingerprintSearcher{
+
+	private HashMap<Integer,PostingList> pair_PostingList_Table;	// pair_PostingList_Table<pairHashcode,postings>
+	private HashMap<Integer,Integer> track_NumFrames_Table;	// track_NumFrames_Table<trackId,numFrames>
+	private long numPostings;
+
+	/**
+	 * Constructor, the pairs are hashed by the bit widths of FingerprintProperties
+	 */
+	public FingerprintIndex(){
+		this(new PairHash());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param pairHash	packing of the pair hashcodes, the tracks, clips and stop pairs of the index are all hashed by it
+	 */
+	public FingerprintIndex(PairHash pairHash){
+		setPairHash(pairHash);
+		pair_PostingList_Table=new HashMap<Integer,PostingList>();
+		track_NumFrames_Table=new HashMap<Integer,Integer>();
+		numPostings=0;
+	}
+
+	/**
+	 * Add a reference fingerprint to the index
+	 *
+	 * @param trackId	id of the track, must be unique in the index
+	 * @param fingerprint	fingerprint bytes of the track
+	 */
+	public void addFingerprint(int trackId, byte[] fingerprint){
+
+		if (track_NumFrames_Table.containsKey(trackId)){
+			System.err.println("FingerprintIndex: track "+trackId+" is already indexed");
+			return;
+		}
+
+		PairManager pairManager=new PairManager(true, getPairHash());
+		addPairTable(trackId, FingerprintManager.getNumFrames(fingerprint), pairManager.getPairTable(fingerprint));
+	}
+
+	/**
+	 * Add reference fingerprint points to the index, the track may be longer than the fingerprint bytes can store
+	 *
+	 * @param trackId	id of the track, must be unique in the index
+	 * @param fingerprintPoints	fingerprint points of the track
+	 */
+	public void addFingerprint(int trackId, FingerprintPoints fingerprintPoints){
+
+		if (track_NumFrames_Table.containsKey(trackId)){
+			System.err.println("FingerprintIndex: track "+trackId+" is already indexed");
+			return;
+		}
+
+		PairManager pairManager=new PairManager(true, getPairHash());
+		addPairTable(trackId, fingerprintPoints.getNumFrames(), pairManager.getPairTable(fingerprintPoints));
+	}
+
+	/**
+	 * Add the reference pairs of a fingerprint to the index
+	 *
+	 * @param trackId	id of the track, must be unique in the index
+	 * @param numFrames	number of frames of the fingerprint
+	 * @param pairTable	pair table of the fingerprint, paired as a reference by the pair hash of the index
+	 * @return false if the track is already indexed
+	 */
+	boolean addPairTable(int trackId, int numFrames, PairTable pairTable){
+
+		if (track_NumFrames_Table.containsKey(trackId)){
+			System.err.println("FingerprintIndex: track "+trackId+" is already indexed");
+			return false;
+		}
+		track_NumFrames_Table.put(trackId, numFrames);
+
+		int[] pairHashcodes=pairTable.getPairHashcodes();
+		int[] positions=pairTable.getPositions();
+
+		int start=0;
+		while (start<pairHashcodes.length){
+			int end=pairTable.getRunEnd(start);
+			PostingList postingList=pair_PostingList_Table.get(pairHashcodes[start]);
+			if (postingList==null){
+				postingList=new PostingList();
+				pair_PostingList_Table.put(pairHashcodes[start], postingList);
+			}
+			for (int i=start; i<end; i++){
+				postingList.add(trackId, positions[i]);
+			}
+			numPostings+=end-start;
+			start=end;
+		}
+		return true;
+	}
+
+	void countOffsets(int pairHashcode, int[] clipPositions, int start, int end, TrackOffsetCounter trackOffsetCounter){
+
+		PostingList postingList=pair_PostingList_Table.get(pairHashcode);
+		if (postingList==null){
+			return;
+		}
+
+		long[] postings=postingList.getPostings();
+		int numPairPostings=postingList.size();
+
+		trackOffsetCounter.clearPostings();
+		for (int i=0; i<numPairPostings; i++){
+			trackOffsetCounter.addPosting(PostingList.getTrackId(postings[i]), PostingList.getFrame(postings[i]));
+		}
+		trackOffsetCounter.countPostings(clipPositions, start, end);
+	}
+
+	void countHits(int pairHashcode, int numClipPairs, TrackOffsetCounter trackOffsetCounter){
+
+		PostingList postingList=pair_PostingList_Table.get(pairHashcode);
+		if (postingList==null){
+			return;
+		}
+
+		long[] postings=postingList.getPostings();
+		int numPairPostings=postingList.size();
+		for (int i=0; i<numPairPostings; i++){
+			trackOffsetCounter.countHits(PostingList.getTrackId(postings[i]), numClipPairs);
+		}
+	}
+
+	/**
+	 * Save the index to a file, which can be opened by MappedFingerprintIndex
+	 *
+	 * @param filename	index filename
+	 * @see	MappedFingerprintIndex
+	 */
+	public void saveIndexAsFile(String filename){
+
+		// tracks sorted by id
+		int[] trackIds=new int[track_NumFrames_Table.size()];
+		int pointer=0;
+		Iterator<Integer> trackIterator=track_NumFrames_Table.keySet().iterator();
+		while (trackIterator.hasNext()){
+			trackIds[pointer++]=trackIterator.next();
+		}
+		Arrays.sort(trackIds);
+
+		// hash directory sorted by pair hashcode
+		int[] pairHashcodes=new int[pair_PostingList_Table.size()];
+		pointer=0;
+		Iterator<Integer> pairIterator=pair_PostingList_Table.keySet().iterator();
+		while (pairIterator.hasNext()){
+			pairHashcodes[pointer++]=pairIterator.next();
+		}
+		Arrays.sort(pairHashcodes);
+
+		File outFile=new File(filename);
+		if (outFile.getParentFile()!=null){
+			outFile.getParentFile().mkdirs();
+		}
+		// the stream is closed even if a write fails
+		try (DataOutputStream dos=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile),1<<16))) {
+
+			// header
+			dos.writeInt(MappedFingerprintIndex.MAGIC);
+			dos.writeInt(MappedFingerprintIndex.VERSION);
+			dos.writeInt(getPairHash().getLayout());
+			dos.writeInt(trackIds.length);
+			dos.writeInt(pairHashcodes.length);
+			dos.writeLong(numPostings);
+
+			// track table: trackId, numFrames
+			for (int i=0; i<trackIds.length; i++){
+				dos.writeInt(trackIds[i]);
+				dos.writeInt(track_NumFrames_Table.get(trackIds[i]));
+			}
+
+			// hash directory: sorted hashcodes, then numHashes+1 posting offsets
+			for (int i=0; i<pairHashcodes.length; i++){
+				dos.writeInt(pairHashcodes[i]);
+			}
+			long postingOffset=0;
+			dos.writeLong(postingOffset);
+			for (int i=0; i<pairHashcodes.length; i++){
+				postingOffset+=pair_PostingList_Table.get(pairHashcodes[i]).size();
+				dos.writeLong(postingOffset);
+			}
+
+			// posting blocks: trackId, frame
+			for (int i=0; i<pairHashcodes.length; i++){
+				PostingList postingList=pair_PostingList_Table.get(pairHashcodes[i]);
+				long[] postings=postingList.getPostings();
+				for (int j=0; j<postingList.size(); j++){
+					dos.writeInt(PostingList.getTrackId(postings[j]));
+					dos.writeInt(PostingList.getFrame(postings[j]));
+				}
+			}
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public int getNumPostings(int pairHashcode){
+		PostingList postingList=pair_PostingList_Table.get(pairHashcode);
+		return postingList==null?0:postingList.size();
+	}
+
+	public HashMap<Integer,Integer> getPairDocumentFrequencies(){
+		HashMap<Integer,Integer> pair_DocumentFrequency_Table=new HashMap<Integer,Integer>();
+		Iterator<Entry<Integer,PostingList>> pairIterator=pair_PostingList_Table.entrySet().iterator();
+		while (pairIterator.hasNext()){
+			Entry<Integer,PostingList> entry=pairIterator.next();
+			pair_DocumentFrequency_Table.put(entry.getKey(), getNumTracks(entry.getValue()));
+		}
+		return pair_DocumentFrequency_Table;
+	}
+
+	// the postings of a track are added together, so the tracks are counted by the changes of track id
+	private int getNumTracks(PostingList postingList){
+		long[] postings=postingList.getPostings();
+		int numTracks=0;
+		for (int i=0; i<postingList.size(); i++){
+			if (i==0 || PostingList.getTrackId(postings[i])!=PostingList.getTrackId(postings[i-1])){
+				numTracks++;
+			}
+		}
+		return numTracks;
+	}
+
+	/**
+	 * Check a track is indexed or not
+	 *
+	 * @param trackId	id of the track
+	 * @return true if the track is indexed
+	 */
+	public boolean containsTrack(int trackId){
+		return track_NumFrames_Table.containsKey(trackId);
+	}
+
+	public int getNumFrames(int trackId){
+		Integer numFrames=track_NumFrames_Table.get(trackId);
+		return numFrames==null?0:numFrames;
+	}
+
+	public int getNumTracks(){
+		return track_NumFrames_Table.size();
+	}
+
+	public int getNumPairHashcodes(){
+		return pair_PostingList_Table.size();
+	}
+
+	public long getNumPostings(){
+		return numPostings;
+	}
+}
@@ -17,19 +17,21 @@
 package com.musicg.fingerprint;
 
 import java.io.*;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
 
 import com.musicg.dsp.Resampler;
-import com.musicg.processor.TopManyPointsProcessorChain;
+import com.musicg.processor.FilterBankPeakProcessor;
 import com.musicg.properties.FingerprintProperties;
 import com.musicg.wave.Wave;
 import com.musicg.wave.WaveHeader;
+import com.musicg.wave.extension.FloatSpectrogram;
 import com.musicg.wave.extension.Spectrogram;
 
 /**
  * Audio fingerprint manager, handle fingerprint operations
+ * The waves are only read in the extraction, so waves and a manager can be shared by threads extracting at the same time,
+ * as long as the settings of the manager and the waves are not changed meanwhile
  * 
  * @author jacquet
  *
@@ -41,6 +43,9 @@ public class FingerprintManager{
 	private int overlapFactor=fingerprintProperties.getOverlapFactor();
 	private int numRobustPointsPerFrame=fingerprintProperties.getNumRobustPointsPerFrame();
 	private int numFilterBanks=fingerprintProperties.getNumFilterBanks();
+	private ExecutorService spectrogramExecutor;	// null for serial spectrogram
+	private boolean floatSpectrogram;	// extract from FloatSpectrogram instead of Spectrogram
+	private int resamplerQuality=Resampler.QUALITY_LINEAR;
 	
 	/**
 	 * Constructor
@@ -48,6 +53,37 @@ public class FingerprintManager{
 	public FingerprintManager(){
 		
 	}
+	
+	/**
+	 * Constructor, the spectrograms of the waves are transformed in parallel, the fingerprints are the same
+	 * 
+	 * @param spectrogramExecutor	executor of the spectrogram fft tasks, e.g. a ForkJoinPool shared by the manager's callers
+	 */
+	public FingerprintManager(ExecutorService spectrogramExecutor){
+		this.spectrogramExecutor=spectrogramExecutor;
+	}
+	
+	/**
+	 * Extract the fingerprints of waves from FloatSpectrogram, in half the memory of Spectrogram
+	 * The intensities of the points differ by the float rounding, a frame having close robust points may pick another point
+	 * The spectrogram executor is not used by FloatSpectrogram
+	 * 
+	 * @param floatSpectrogram	true to use FloatSpectrogram, default false
+	 */
+	public void setFloatSpectrogram(boolean floatSpectrogram){
+		this.floatSpectrogram=floatSpectrogram;
+	}
+	
+	/**
+	 * Set the quality of resampling the waves to the fingerprint sample rate
+	 * A filtered resampling does not alias the frequencies above 5120Hz into the fingerprint, but the fingerprints differ from the linear ones,
+	 * so the fingerprints to be compared must be extracted with the same quality
+	 * 
+	 * @param resamplerQuality	Resampler.QUALITY_LINEAR (default), or PolyphaseResampler.QUALITY_FAST, QUALITY_MEDIUM or QUALITY_HIGH
+	 */
+	public void setResamplerQuality(int resamplerQuality){
+		this.resamplerQuality=resamplerQuality;
+	}
 
 	/**
 	 * Extract fingerprint from Wave object
@@ -56,85 +92,152 @@ public class FingerprintManager{
 	 * @return fingerprint in bytes
 	 */
 	public byte[] extractFingerprint(Wave wave){
+		return getFingerprintBytes(extractFingerprintPoints(wave));
+	}
+
+	/**
+	 * Extract fingerprint from the spectrogram of a wave
+	 * 
+	 * @param spectrogramData	normalized spectrogram of the wave resampled to the fingerprint sample rate, with the fingerprint frame size and overlap factor
+	 * @return fingerprint in bytes
+	 */
+	public byte[] extractFingerprint(double[][] spectrogramData){
+		return getFingerprintBytes(extractFingerprintPoints(spectrogramData));
+	}
 
-		int[][] coordinates;	// coordinates[x][0..3]=y0..y3
-		byte[] fingerprint=new byte[0];
+	// fingerprint bytes of the points
+	private byte[] getFingerprintBytes(FingerprintPoints fingerprintPoints){
+
+		int numPoints=fingerprintPoints.getNumPoints();
+		int[] frames=fingerprintPoints.getFrames();
+		int[] frequencyUnits=fingerprintPoints.getFrequencyUnits();
+		int[] intensities=fingerprintPoints.getIntensities();
+
+		if (fingerprintPoints.getNumFrames()>FingerprintPoints.MAX_BYTES_FRAME+1){
+			System.err.println("FingerprintManager: x of the frames after "+FingerprintPoints.MAX_BYTES_FRAME+" overflows, use extractFingerprintPoints for long waves");
+		}
+
+		// each point is 8 bytes: 2 bytes x, 2 bytes y, 4 bytes intensity
+		ByteBuffer fingerprint=ByteBuffer.allocate(numPoints*FingerprintPoints.BYTES_PER_POINT);
+		for (int i=0; i<numPoints; i++){
+			fingerprint.putShort((short)frames[i]);
+			fingerprint.putShort((short)frequencyUnits[i]);
+			fingerprint.putInt(intensities[i]);
+		}
+		return fingerprint.array();
+	}
+
+	/**
+	 * Extract fingerprint points from Wave object, the points are the same as the fingerprint bytes but the number of frames is not limited
+	 * 
+	 * @param wave	Wave Object to be extracted fingerprint
+	 * @return fingerprint points
+	 */
+	public FingerprintPoints extractFingerprintPoints(Wave wave){
+		if (floatSpectrogram){
+			return extractFingerprintPoints(getResampledWave(wave).getFloatSpectrogram(sampleSizePerFrame, overlapFactor));
+		}
+		Spectrogram spectrogram;
+		if (spectrogramExecutor!=null){
+			// the parallel fft reads the frames from the samples of the resampled wave
+			spectrogram=getResampledWave(wave).getSpectrogram(sampleSizePerFrame, overlapFactor, spectrogramExecutor);
+		}
+		else{
+			// the frames are transformed while the wave bytes are resampled, no resampled wave is made
+			spectrogram=new Spectrogram(wave, fingerprintProperties.getSampleRate(), resamplerQuality, sampleSizePerFrame, overlapFactor);
+		}
+		spectrogram.setReleaseAbsoluteSpectrogram(true);	// only the normalized spectrogram is read
+		return extractFingerprintPoints(spectrogram.getNormalizedSpectrogramData());
+	}
+
+	/**
+	 * Extract fingerprint points from the spectrogram of a wave
+	 * Only the frames having numRobustPointsPerFrame robust points are taken
+	 * 
+	 * @param spectrogramData	normalized spectrogram of the wave resampled to the fingerprint sample rate, with the fingerprint frame size and overlap factor
+	 * @return fingerprint points
+	 */
+	public FingerprintPoints extractFingerprintPoints(double[][] spectrogramData){
+		int numFrequencyUnits=spectrogramData.length>0 ? spectrogramData[0].length : 0;
+		return extractFingerprintPoints(spectrogramData, null, spectrogramData.length, numFrequencyUnits);
+	}
+
+	/**
+	 * Extract fingerprint points from the float spectrogram of a wave
+	 * Only the frames having numRobustPointsPerFrame robust points are taken
+	 * 
+	 * @param spectrogram	spectrogram of the wave resampled to the fingerprint sample rate, with the fingerprint frame size and overlap factor
+	 * @return fingerprint points
+	 */
+	public FingerprintPoints extractFingerprintPoints(FloatSpectrogram spectrogram){
+		return extractFingerprintPoints(null, spectrogram, spectrogram.getNumFrames(), spectrogram.getNumFrequencyUnit());
+	}
+
+	// the frames are taken from spectrogramData, or copied from floatSpectrogramData one at a time
+	private FingerprintPoints extractFingerprintPoints(double[][] spectrogramData, FloatSpectrogram floatSpectrogramData, int numFrames, int numFrequencyUnits){
+		
+		int maxPoints=numFrames*numRobustPointsPerFrame;
+		int[] frames=new int[maxPoints];
+		int[] frequencyUnits=new int[maxPoints];
+		int[] intensities=new int[maxPoints];
+		int numPoints=0;
+		
+		if (numFrames==0){
+			return new FingerprintPoints(frames, frequencyUnits, intensities, numPoints);
+		}
+		
+		// the most robust point in each filter bank, picked frame by frame
+		FilterBankPeakProcessor peakProcessor=new FilterBankPeakProcessor(numFilterBanks,1);
+		int[] robustPoints=new int[numFrequencyUnits];
+		double[] frameBuffer=floatSpectrogramData!=null ? new double[numFrequencyUnits] : null;
+		
+		for (int x=0; x<numFrames; x++){
+			double[] frameIntensities;
+			if (floatSpectrogramData!=null){
+				floatSpectrogramData.getNormalizedFrame(x, frameBuffer);
+				frameIntensities=frameBuffer;
+			}
+			else{
+				frameIntensities=spectrogramData[x];
+			}
+			
+			// the frame is taken only if it has all robust points
+			int numFramePoints=peakProcessor.getPeaks(frameIntensities, robustPoints);
+			if (numFramePoints!=numRobustPointsPerFrame){
+				continue;
+			}
+			
+			for (int i=0; i<numFramePoints; i++){
+				int y=robustPoints[i];
+				frames[numPoints]=x;
+				frequencyUnits[numPoints]=y;
+				intensities[numPoints]=(int)(frameIntensities[y]*Integer.MAX_VALUE);	// spectrogramData is ranged from 0~1
+				numPoints++;
+			}
+		}
+		
+		return new FingerprintPoints(frames, frequencyUnits, intensities, numPoints);
+	}
+	
+	// wave resampled to the fingerprint sample rate, the wave and its header are not changed
+	private Wave getResampledWave(Wave wave){
 				
 		// resample to target rate
-		Resampler resampler=new Resampler();
+		Resampler resampler=new Resampler(resamplerQuality);
 		int sourceRate = wave.getWaveHeader().getSampleRate();
         int targetRate = fingerprintProperties.getSampleRate();
 
        	byte[] resampledWaveData=resampler.reSample(wave.getBytes(), wave.getWaveHeader().getBitsPerSample(), sourceRate, targetRate);
 		
-        // update the wave header
-        WaveHeader resampledWaveHeader=wave.getWaveHeader();
+        // copy of the wave header at the target rate
+        WaveHeader resampledWaveHeader=new WaveHeader(wave.getWaveHeader());
         resampledWaveHeader.setSampleRate(targetRate);
         
         // make resampled wave
         Wave resampledWave=new Wave(resampledWaveHeader,resampledWaveData);
         // end resample to target rate
         
-		// get spectrogram's data
-		Spectrogram spectrogram=resampledWave.getSpectrogram(sampleSizePerFrame, overlapFactor);
-		double[][] spectorgramData=spectrogram.getNormalizedSpectrogramData();
-		
-		List<Integer>[] pointsLists=getRobustPointList(spectorgramData);
-		int numFrames=pointsLists.length;
-				
-		// prepare fingerprint bytes
-		coordinates=new int[numFrames][numRobustPointsPerFrame];
-			
-		for (int x=0; x<numFrames; x++){
-			if (pointsLists[x].size()==numRobustPointsPerFrame){
-				Iterator<Integer> pointsListsIterator=pointsLists[x].iterator();
-				for (int y=0; y<numRobustPointsPerFrame; y++){
-					coordinates[x][y]=pointsListsIterator.next();
-				}
-			}
-			else{		
-				// use -1 to fill the empty byte
-				for (int y=0; y<numRobustPointsPerFrame; y++){
-					coordinates[x][y]=-1;
-				}
-			}
-		}		
-		// end make fingerprint
-			
-		// for each valid coordinate, append with its intensity
-		List<Byte> byteList=new LinkedList<Byte>();
-		for (int i=0; i<numFrames; i++){
-			for (int j=0; j<numRobustPointsPerFrame; j++){
-				if (coordinates[i][j]!=-1){
-					// first 2 bytes is x
-					int x=i;
-					byteList.add((byte)(x>>8));
-					byteList.add((byte)x);
-					
-					// next 2 bytes is y
-					int y=coordinates[i][j];
-					byteList.add((byte)(y>>8));
-					byteList.add((byte)y);
-					
-					// next 4 bytes is intensity
-					int intensity=(int)(spectorgramData[x][y]*Integer.MAX_VALUE);	// spectorgramData is ranged from 0~1
-					byteList.add((byte)(intensity>>24));
-					byteList.add((byte)(intensity>>16));
-					byteList.add((byte)(intensity>>8));
-					byteList.add((byte)intensity);
-				}
-			}
-		}
-		// end for each valid coordinate, append with its intensity
-			
-		fingerprint=new byte[byteList.size()];
-		Iterator<Byte> byteListIterator=byteList.iterator();
-		int pointer=0;
-		while(byteListIterator.hasNext()){
-			fingerprint[pointer++]=byteListIterator.next();
-		}
-
-		return fingerprint;
+		return resampledWave;
 	}
 
 	/**
@@ -197,67 +300,6 @@ public class FingerprintManager{
 		}
 	}
 	
-	// robustLists[x]=y1,y2,y3,...
-	private List<Integer>[] getRobustPointList(double[][] spectrogramData){
-		
-		int numX=spectrogramData.length;
-		int numY=spectrogramData[0].length;
-		
-		double[][] allBanksIntensities=new double[numX][numY];		
-		int bandwidthPerBank=numY/numFilterBanks;
-		
-		for (int b=0; b<numFilterBanks; b++){
-			
-			double[][] bankIntensities=new double[numX][bandwidthPerBank];
-			
-			for (int i=0; i<numX; i++){
-				for (int j=0; j<bandwidthPerBank; j++){
-					bankIntensities[i][j]=spectrogramData[i][j+b*bandwidthPerBank];
-				}
-			}
-			
-			// get the most robust point in each filter bank
-			TopManyPointsProcessorChain processorChain=new TopManyPointsProcessorChain(bankIntensities,1);
-			double[][] processedIntensities=processorChain.getIntensities();
-			
-			for (int i=0; i<numX; i++){
-				for (int j=0; j<bandwidthPerBank; j++){
-					allBanksIntensities[i][j+b*bandwidthPerBank]=processedIntensities[i][j];
-				}
-			}
-		}
-		
-		List<int[]> robustPointList=new LinkedList<int[]>();
-		
-		// find robust points
-		for (int i=0; i<allBanksIntensities.length; i++){
-			for (int j=0; j<allBanksIntensities[i].length; j++){	
-				if (allBanksIntensities[i][j]>0){
-					
-					int[] point=new int[]{i,j};
-					//System.out.println(i+","+frequency);
-					robustPointList.add(point);
-				}
-			}
-		}
-		// end find robust points
-
-		List<Integer>[] robustLists=new LinkedList[spectrogramData.length];
-		for (int i=0; i<robustLists.length; i++){
-			robustLists[i]=new LinkedList<Integer>();
-		}
-		
-		// robustLists[x]=y1,y2,y3,...
-		Iterator<int[]> robustPointListIterator=robustPointList.iterator();
-		while (robustPointListIterator.hasNext()){
-			int[] coor=robustPointListIterator.next();
-			robustLists[coor[0]].add(coor[1]);
-		}
-		
-		// return the list per frame
-		return robustLists;
-	}
-
 	/**
 	 * Number of frames in a fingerprint
 	 * Each frame lengths 8 bytes
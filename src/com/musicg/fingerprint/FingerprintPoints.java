@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.fingerprint;
+
+/**
+ * Robust points of a fingerprint, point i is (frames[i], frequencyUnits[i]) with intensities[i]
+ * The points are ordered by frame, then by frequency unit, as they are extracted
+ * Unlike the fingerprint bytes, the number of frames is not limited to 65536
+ *
+ * @author jacquet
+ *
+ */
+public class FingerprintPoints{
+
+	public static final int BYTES_PER_POINT=8;	// 2 bytes x, 2 bytes y, 4 bytes intensity in the fingerprint bytes
+	public static final int MAX_BYTES_FRAME=0xFFFF;	// largest frame which fits in the fingerprint bytes
+
+	private int[] frames;
+	private int[] frequencyUnits;
+	private int[] intensities;
+	private int numPoints;
+
+	/**
+	 * Constructor
+	 *
+	 * @param frames	frame (x) of each point
+	 * @param frequencyUnits	frequency unit (y) of each point
+	 * @param intensities	intensity of each point, normalized spectrogram intensity * Integer.MAX_VALUE
+	 * @param numPoints	number of points used in the arrays
+	 */
+	public FingerprintPoints(int[] frames, int[] frequencyUnits, int[] intensities, int numPoints){
+		this.frames=frames;
+		this.frequencyUnits=frequencyUnits;
+		this.intensities=intensities;
+		this.numPoints=numPoints;
+	}
+
+	/**
+	 * Read the points of fingerprint bytes
+	 *
+	 * @param fingerprint	fingerprint bytes
+	 * @return points
+	 */
+	public static FingerprintPoints fromBytes(byte[] fingerprint){
+		int numPoints=fingerprint.length/BYTES_PER_POINT;
+		int[] frames=new int[numPoints];
+		int[] frequencyUnits=new int[numPoints];
+		int[] intensities=new int[numPoints];
+
+		for (int i=0; i<numPoints; i++){
+			int pointer=i*BYTES_PER_POINT;
+			frames[i]=(int)(fingerprint[pointer]&0xff)<<8 | (int)(fingerprint[pointer+1]&0xff);
+			frequencyUnits[i]=(int)(fingerprint[pointer+2]&0xff)<<8 | (int)(fingerprint[pointer+3]&0xff);
+			intensities[i]=(int)(fingerprint[pointer+4]&0xff)<<24 | (int)(fingerprint[pointer+5]&0xff)<<16 | (int)(fingerprint[pointer+6]&0xff)<<8 | (int)(fingerprint[pointer+7]&0xff);
+		}
+		return new FingerprintPoints(frames, frequencyUnits, intensities, numPoints);
+	}
+
+	/**
+	 * Write the points as fingerprint bytes
+	 *
+	 * @return fingerprint bytes, null if a frame is larger than MAX_BYTES_FRAME
+	 */
+	public byte[] toBytes(){
+		if (numPoints>0 && frames[numPoints-1]>MAX_BYTES_FRAME){
+			System.err.println("FingerprintPoints: "+getNumFrames()+" frames cannot be written as fingerprint bytes, use CompactFingerprintWriter");
+			return null;
+		}
+
+		byte[] fingerprint=new byte[numPoints*BYTES_PER_POINT];
+		int pointer=0;
+		for (int i=0; i<numPoints; i++){
+			fingerprint[pointer++]=(byte)(frames[i]>>8);
+			fingerprint[pointer++]=(byte)frames[i];
+			fingerprint[pointer++]=(byte)(frequencyUnits[i]>>8);
+			fingerprint[pointer++]=(byte)frequencyUnits[i];
+			fingerprint[pointer++]=(byte)(intensities[i]>>24);
+			fingerprint[pointer++]=(byte)(intensities[i]>>16);
+			fingerprint[pointer++]=(byte)(intensities[i]>>8);
+			fingerprint[pointer++]=(byte)intensities[i];
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Number of frames, same as FingerprintManager.getNumFrames() of the fingerprint bytes
+	 *
+	 * @return the last frame + 1, 0 if there is no point
+	 */
+	public int getNumFrames(){
+		if (numPoints==0){
+			return 0;
+		}
+		return frames[numPoints-1]+1;
+	}
+
+	public int getNumPoints(){
+		return numPoints;
+	}
+
+	public int[] getFrames(){
+		return frames;
+	}
+
+	public int[] getFrequencyUnits(){
+		return frequencyUnits;
+	}
+
+	public int[] getIntensities(){
+		return intensities;
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.fingerprint;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Search a clip against the tracks of an inverted fingerprint index
+ * Subclasses provide the postings storage, e.g. in memory or in a mapped file
+ *
+ * @author jacquet
+ *
+ */
+public abstract class FingerprintSearcher{
+
+	public static final int CANDIDATES_PER_RESULT=8;	// candidate tracks per result of a top-K search
+
+	private PairHash pairHash=new PairHash();	// packing of the indexed pairs, the clips are paired with it too
+	private StopPairList stopPairList;	// null for no stop pairs
+
+	/**
+	 * Get the packing of the pair hashcodes of the index
+	 *
+	 * @return pair hash
+	 */
+	public PairHash getPairHash(){
+		return pairHash;
+	}
+
+	// set by the subclasses before any pair is indexed
+	void setPairHash(PairHash pairHash){
+		this.pairHash=pairHash;
+	}
+
+	/**
+	 * Set the stop pairs, the clip pairs in the list are not looked up in the index
+	 * Set it before searching, the searches running at the same time may use the former list
+	 *
+	 * @param stopPairList	stop pairs, e.g. StopPairList.build() of this index, null for no stop pairs
+	 */
+	public void setStopPairList(StopPairList stopPairList){
+		if (stopPairList!=null && stopPairList.getPairHash().getLayout()!=pairHash.getLayout()){
+			System.err.println("FingerprintSearcher: Pair hash layout of the stop pairs is not the one of the index, the stop pairs are not set");
+			return;
+		}
+		this.stopPairList=stopPairList;
+	}
+
+	public StopPairList getStopPairList(){
+		return stopPairList;
+	}
+
+	/**
+	 * Search a clip against all indexed tracks
+	 * Only the tracks sharing at least one pair with the clip are returned
+	 *
+	 * @param clipFingerprint	fingerprint bytes of the clip
+	 * @return track_Similarity_Table<trackId,similarity>, the most similar frame position is the offset of the clip in the track
+	 */
+	public HashMap<Integer,FingerprintSimilarity> search(byte[] clipFingerprint){
+
+		TrackOffsetCounter trackOffsetCounter=new TrackOffsetCounter();
+		PairTable clipPairTable=getClipPairTable(clipFingerprint);
+		countOffsets(clipPairTable, trackOffsetCounter);
+
+		return trackOffsetCounter.getSimilarities(this, FingerprintManager.getNumFrames(clipFingerprint));
+	}
+
+	/**
+	 * Search a clip for its best matched tracks, with CANDIDATES_PER_RESULT candidate tracks per result
+	 * The results are approximate, see search(byte[], int, int)
+	 *
+	 * @param clipFingerprint	fingerprint bytes of the clip
+	 * @param topK	maximum number of results
+	 * @return match results, the highest score first
+	 * @see #search(byte[], int, int)
+	 */
+	public List<MatchResult> search(byte[] clipFingerprint, int topK){
+		return search(clipFingerprint, topK, topK*CANDIDATES_PER_RESULT);
+	}
+
+	/**
+	 * Search a clip for its best matched tracks
+	 * The tracks are pruned by their hits first, i.e. the clip pairs they share at any offset, and the offsets are counted for the candidates only
+	 * The hits per frame of a track bound its score, so a pruned track can not score more than the candidates of higher bounds
+	 * 
+	 * The results are approximate: a pruned track of many hits at scattered offsets may score more than a candidate
+	 * They are the same as the top of search(byte[]) if the score of the last result is not lower than the bound of the pruned tracks
+	 * e.g. the exact top-5 of 8 candidates per result in 99 of 100 noisy clips of TopKSearchBenchmark, 86 of 100 for 4 candidates per result
+	 *
+	 * @param clipFingerprint	fingerprint bytes of the clip
+	 * @param topK	maximum number of results
+	 * @param numCandidates	number of candidate tracks of the highest bounds, at least topK
+	 * @return match results, the highest score first
+	 */
+	public List<MatchResult> search(byte[] clipFingerprint, int topK, int numCandidates){
+
+		TrackOffsetCounter trackOffsetCounter=new TrackOffsetCounter();
+		PairTable clipPairTable=getClipPairTable(clipFingerprint);
+		int clipNumFrames=FingerprintManager.getNumFrames(clipFingerprint);
+		int[] clipPairHashcodes=clipPairTable.getPairHashcodes();
+
+		// hits of every track sharing a pair with the clip
+		int start=0;
+		while (start<clipPairHashcodes.length){
+			int end=clipPairTable.getRunEnd(start);
+			countHits(clipPairHashcodes[start], end-start, trackOffsetCounter);
+			start=end;
+		}
+		trackOffsetCounter.selectCandidates(this, clipNumFrames, Math.max(topK, numCandidates));
+
+		// offsets of the candidates
+		countOffsets(clipPairTable, trackOffsetCounter);
+
+		return trackOffsetCounter.getMatchResults(this, clipNumFrames, topK);
+	}
+
+	// the clip is paired as a sample, so more pairs are taken to compensate for the environmental influence
+	private PairTable getClipPairTable(byte[] clipFingerprint){
+		PairManager pairManager=new PairManager(false, pairHash);
+		pairManager.setStopPairList(stopPairList);
+		return pairManager.getPairTable(clipFingerprint);
+	}
+
+	private void countOffsets(PairTable clipPairTable, TrackOffsetCounter trackOffsetCounter){
+		int[] clipPairHashcodes=clipPairTable.getPairHashcodes();
+		int[] clipPositions=clipPairTable.getPositions();
+
+		int start=0;
+		while (start<clipPairHashcodes.length){
+			int end=clipPairTable.getRunEnd(start);
+			countOffsets(clipPairHashcodes[start], clipPositions, start, end, trackOffsetCounter);
+			start=end;
+		}
+	}
+
+	/**
+	 * Count the offsets between every posting of the pair hashcode and every clip position
+	 * The postings are added to the counter once, so the postings of the tracks not in the candidates are skipped before the clip positions
+	 *
+	 * @param pairHashcode	hashed pair of the clip
+	 * @param clipPositions	frame positions of the clip pairs
+	 * @param start	first index of the pair hashcode in clipPositions
+	 * @param end	end index (exclusive) of the pair hashcode in clipPositions
+	 * @param trackOffsetCounter	counter of the offsets
+	 */
+	abstract void countOffsets(int pairHashcode, int[] clipPositions, int start, int end, TrackOffsetCounter trackOffsetCounter);
+
+	/**
+	 * Count the hits of every posting of the pair hashcode, without their offsets
+	 *
+	 * @param pairHashcode	hashed pair of the clip
+	 * @param numClipPairs	number of clip pairs having the pair hashcode, i.e. the hits of each posting
+	 * @param trackOffsetCounter	counter of the hits
+	 */
+	abstract void countHits(int pairHashcode, int numClipPairs, TrackOffsetCounter trackOffsetCounter);
+
+	/**
+	 * Number of postings of a pair hashcode, i.e. the postings scanned for each clip pair having it
+	 *
+	 * @param pairHashcode	hashed pair
+	 * @return number of postings, 0 if the pair is not indexed
+	 */
+	public abstract int getNumPostings(int pairHashcode);
+
+	/**
+	 * Number of tracks having each pair hashcode, i.e. the document frequencies of the pairs
+	 *
+	 * @return pair_DocumentFrequency_Table<pairHashcode,numTracks>
+	 */
+	public abstract HashMap<Integer,Integer> getPairDocumentFrequencies();
+
+	/**
+	 * Number of frames of an indexed track
+	 *
+	 * @param trackId	id of the track
+	 * @return number of frames, 0 if the track is not indexed
+	 */
+	public abstract int getNumFrames(int trackId);
+
+	/**
+	 * Number of tracks in the index
+	 *
+	 * @return number of tracks
+	 */
+	public abstract int getNumTracks();
+
+	/**
+	 * Number of distinct pair hashcodes in the index
+	 *
+	 * @return number of pair hashcodes
+	 */
+	public abstract int getNumPairHashcodes();
+
+	/**
+	 * Total number of postings in the index
+	 *
+	 * @return number of postings
+	 */
+	public abstract long getNumPostings();
+}
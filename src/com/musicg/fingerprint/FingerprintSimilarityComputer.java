@@ -15,16 +15,18 @@
  */
 package com.musicg.fingerprint;
 
-import com.musicg.math.rank.MapRank;
-import com.musicg.math.rank.MapRankInteger;
-
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Compute the similarity of two fingerprints
  *
+ * In progressive mode the shared pairs are processed from the most selective, i.e. the fewest matches, and the
+ * computation stops once the leading offset is conclusive: its similarity reaches the threshold, and its count is
+ * the confidence ratio times the runner-up's or no other offset can catch up with the remaining matches
+ * The runner-up of the ratio is the best offset apart from the leading one and its neighbours, which share its matches
+ * The similarity of a stopped computation counts the processed matches only, so it is a lower bound of the full one
+ * and its offset may be a neighbour of the full one
+ *
  * @author jacquet
  */
 public class FingerprintSimilarityComputer {
@@ -32,6 +34,12 @@ public class FingerprintSimilarityComputer {
     private FingerprintSimilarity fingerprintSimilarity;
     byte[] fingerprint1, fingerprint2;
 
+    private boolean isProgressive;
+    private float minSimilarity;
+    private float confidenceRatio;
+    private long numMatches;	// offsets counted for all shared pairs
+    private long numSkippedMatches;	// offsets not counted after an early termination
+
     /**
      * Constructor, ready to compute the similarity of two fingerprints
      *
@@ -46,83 +54,181 @@ public class FingerprintSimilarityComputer {
         fingerprintSimilarity = new FingerprintSimilarity();
     }
 
+    /**
+     * Compute in progressive mode, stop once the leading offset is conclusive
+     *
+     * @param minSimilarity	similarity the leading offset has to reach, e.g. the similarity threshold of a match
+     * @param confidenceRatio	ratio of the leading offset count to the runner-up count, e.g. 2
+     */
+    public void setEarlyTermination(float minSimilarity, float confidenceRatio) {
+        isProgressive = true;
+        this.minSimilarity = minSimilarity;
+        this.confidenceRatio = confidenceRatio;
+    }
+
+    /**
+     * Get the number of matches of the shared pairs, i.e. the offsets counted by a full computation
+     *
+     * @return number of matches
+     */
+    public long getNumMatches() {
+        return numMatches;
+    }
+
+    /**
+     * Get the number of matches skipped by the early termination
+     *
+     * @return number of skipped matches, 0 if the computation was not stopped
+     */
+    public long getNumSkippedMatches() {
+        return numSkippedMatches;
+    }
+
+    public boolean isTerminatedEarly() {
+        return numSkippedMatches > 0;
+    }
+
     /**
      * Get fingerprint similarity of inout fingerprints
      *
      * @return fingerprint similarity object
      */
     public FingerprintSimilarity getFingerprintsSimilarity() {
-        HashMap<Integer, Integer> offset_Score_Table = new HashMap<Integer, Integer>();    // offset_Score_Table<offset,count>
-        float score = 0;
         int mostSimilarFramePosition = Integer.MIN_VALUE;
 
         // get the pairs
         PairManager pairManager = new PairManager();
-        HashMap<Integer, List<Integer>> this_Pair_PositionList_Table = pairManager.getPair_PositionList_Table(fingerprint1);
-        HashMap<Integer, List<Integer>> compareWave_Pair_PositionList_Table = pairManager.getPair_PositionList_Table(fingerprint2);
+        PairTable this_PairTable = pairManager.getPairTable(fingerprint1);
+        PairTable compareWave_PairTable = pairManager.getPairTable(fingerprint2);
 
-        Iterator<Integer> compareWaveHashNumberIterator = compareWave_Pair_PositionList_Table.keySet().iterator();
-        while (compareWaveHashNumberIterator.hasNext()) {
-            int compareWaveHashNumber = compareWaveHashNumberIterator.next();
+        // offsets are bounded by the frame numbers, offset=thisPosition-compareWavePosition is in (-compareWaveNumFrames, thisNumFrames)
+        // offsetScores[offset+offsetShift]=count
+        int thisNumFrames = FingerprintManager.getNumFrames(fingerprint1);
+        int offsetShift = FingerprintManager.getNumFrames(fingerprint2);
+        int[] offsetScores = new int[thisNumFrames + offsetShift];
 
-            // if the compareWaveHashNumber doesn't exist in both tables, no need to compare
-            if (!this_Pair_PositionList_Table.containsKey(compareWaveHashNumber)
-                    || !compareWave_Pair_PositionList_Table.containsKey(compareWaveHashNumber)) {
-                continue;
-            }
+        int[] thisPairHashcodes = this_PairTable.getPairHashcodes();
+        int[] thisPositions = this_PairTable.getPositions();
+        int[] compareWavePairHashcodes = compareWave_PairTable.getPairHashcodes();
+        int[] compareWavePositions = compareWave_PairTable.getPositions();
+
+        int numFrames = 0;
 
-            // for each compare hash number, get the positions
-            List<Integer> wavePositionList = this_Pair_PositionList_Table.get(compareWaveHashNumber);
-            List<Integer> compareWavePositionList = compareWave_Pair_PositionList_Table.get(compareWaveHashNumber);
+        // one frame may contain several points, use the shorter one be the denominator
+        if (fingerprint1.length > fingerprint2.length) {
+            numFrames = FingerprintManager.getNumFrames(fingerprint2);
+        } else {
+            numFrames = FingerprintManager.getNumFrames(fingerprint1);
+        }
 
-            Iterator<Integer> wavePositionListIterator = wavePositionList.iterator();
-            while (wavePositionListIterator.hasNext()) {
-                int thisPosition = wavePositionListIterator.next();
-                Iterator<Integer> compareWavePositionListIterator = compareWavePositionList.iterator();
-                while (compareWavePositionListIterator.hasNext()) {
-                    int compareWavePosition = compareWavePositionListIterator.next();
-                    int offset = thisPosition - compareWavePosition;
+        numMatches = 0;
+        numSkippedMatches = 0;
+        if (isProgressive) {
+            countOffsetsProgressively(this_PairTable, compareWave_PairTable, offsetScores, offsetShift, numFrames);
+        } else {
+            // both tables are sorted by pair hashcode, merge them to find the hash numbers exist in both tables
+            int thisStart = 0;
+            int compareWaveStart = 0;
+            while (thisStart < thisPairHashcodes.length && compareWaveStart < compareWavePairHashcodes.length) {
+                int thisHashNumber = thisPairHashcodes[thisStart];
+                int compareWaveHashNumber = compareWavePairHashcodes[compareWaveStart];
 
-                    if (offset_Score_Table.containsKey(offset)) {
-                        offset_Score_Table.put(offset, offset_Score_Table.get(offset) + 1);
-                    } else {
-                        offset_Score_Table.put(offset, 1);
+                if (thisHashNumber < compareWaveHashNumber) {
+                    thisStart = this_PairTable.getRunEnd(thisStart);
+                    continue;
+                }
+                if (thisHashNumber > compareWaveHashNumber) {
+                    compareWaveStart = compareWave_PairTable.getRunEnd(compareWaveStart);
+                    continue;
+                }
+
+                // for each compare hash number, get the positions
+                int thisEnd = this_PairTable.getRunEnd(thisStart);
+                int compareWaveEnd = compareWave_PairTable.getRunEnd(compareWaveStart);
+
+                for (int i = thisStart; i < thisEnd; i++) {
+                    int shiftedPosition = thisPositions[i] + offsetShift;
+                    for (int j = compareWaveStart; j < compareWaveEnd; j++) {
+                        offsetScores[shiftedPosition - compareWavePositions[j]]++;
                     }
                 }
+                numMatches += (long) (thisEnd - thisStart) * (compareWaveEnd - compareWaveStart);
+
+                thisStart = thisEnd;
+                compareWaveStart = compareWaveEnd;
             }
         }
 
-        // map rank
-        MapRank mapRank = new MapRankInteger(offset_Score_Table, false);
-
-        // get the most similar positions and scores
-        List<Integer> orderedKeyList = mapRank.getOrderedKeyList(100, true);
-        if (orderedKeyList.size() > 0) {
-            int key = orderedKeyList.get(0);
-            // get the highest score position
-            if (mostSimilarFramePosition == Integer.MIN_VALUE) {
-                mostSimilarFramePosition = key;
-                score = offset_Score_Table.get(key);
-
-                // accumulate the scores from neighbours
-                if (offset_Score_Table.containsKey(key - 1)) {
-                    score += offset_Score_Table.get(key - 1) / 2;
-                }
-                if (offset_Score_Table.containsKey(key + 1)) {
-                    score += offset_Score_Table.get(key + 1) / 2;
-                }
+        // get the highest score position, ties are broken by the scores accumulated from neighbours
+        int maxCount = 0;
+        int maxNeighbourScore = 0;
+        for (int i = 0; i < offsetScores.length; i++) {
+            int count = offsetScores[i];
+            if (count == 0 || count < maxCount) {
+                continue;
+            }
+
+            // accumulate the scores from neighbours
+            int neighbourScore = getNeighbourScore(i > 0 ? offsetScores[i - 1] : 0, i < offsetScores.length - 1 ? offsetScores[i + 1] : 0);
+
+            if (isBetterOffset(count, neighbourScore, i - offsetShift, maxCount, maxNeighbourScore, mostSimilarFramePosition)) {
+                maxCount = count;
+                maxNeighbourScore = neighbourScore;
+                mostSimilarFramePosition = i - offsetShift;
             }
         }
+        setSimilarity(fingerprintSimilarity, mostSimilarFramePosition, maxCount, maxNeighbourScore, numFrames);
 
-        int numFrames = 0;
+        return fingerprintSimilarity;
+    }
 
-        // one frame may contain several points, use the shorter one be the denominator
-        if (fingerprint1.length > fingerprint2.length) {
-            numFrames = FingerprintManager.getNumFrames(fingerprint2);
-        } else {
-            numFrames = FingerprintManager.getNumFrames(fingerprint1);
+    /**
+     * Score accumulated from the neighbours of an offset, half of each neighbour count
+     *
+     * @param previousCount	count of the offset before, 0 if none
+     * @param nextCount	count of the offset after, 0 if none
+     * @return neighbour score
+     */
+    static int getNeighbourScore(int previousCount, int nextCount) {
+        return previousCount / 2 + nextCount / 2;
+    }
+
+    /**
+     * Check an offset ranks before the best offset so far: the higher count, then the higher neighbour score, then the earlier offset
+     * The index searches rank the offsets of each track with it too, so they pick the same offset as this computation
+     *
+     * @param count	count of the offset
+     * @param neighbourScore	neighbour score of the offset
+     * @param offset	the offset
+     * @param bestCount	count of the best offset, 0 if none yet
+     * @param bestNeighbourScore	neighbour score of the best offset
+     * @param bestOffset	the best offset
+     * @return true if the offset is better
+     */
+    static boolean isBetterOffset(int count, int neighbourScore, int offset, int bestCount, int bestNeighbourScore, int bestOffset) {
+        if (count != bestCount) {
+            return count > bestCount;
+        }
+        if (neighbourScore != bestNeighbourScore) {
+            return neighbourScore > bestNeighbourScore;
+        }
+        return offset < bestOffset;
+    }
+
+    /**
+     * Set the similarity of the best offset: its count plus its neighbour score, per frame of the shorter fingerprint
+     *
+     * @param fingerprintSimilarity	similarity to set
+     * @param mostSimilarFramePosition	the best offset
+     * @param count	count of the best offset
+     * @param neighbourScore	neighbour score of the best offset
+     * @param numFrames	number of frames of the shorter fingerprint
+     */
+    static void setSimilarity(FingerprintSimilarity fingerprintSimilarity, int mostSimilarFramePosition, int count, int neighbourScore, int numFrames) {
+        float score = count + neighbourScore;
+        if (numFrames > 0) {
+            score /= numFrames;
         }
-        score /= numFrames;
         float similarity = score;
         // similarity >1 means in average there is at least one match in every frame
         if (similarity > 1) {
@@ -132,7 +238,118 @@ public class FingerprintSimilarityComputer {
         fingerprintSimilarity.setMostSimilarFramePosition(mostSimilarFramePosition);
         fingerprintSimilarity.setScore(score);
         fingerprintSimilarity.setSimilarity(similarity);
+    }
 
-        return fingerprintSimilarity;
+    // count the offsets of the shared pairs from the most selective, until the leading offset is conclusive
+    private void countOffsetsProgressively(PairTable this_PairTable, PairTable compareWave_PairTable, int[] offsetScores, int offsetShift, int numFrames) {
+
+        int[] thisPairHashcodes = this_PairTable.getPairHashcodes();
+        int[] thisPositions = this_PairTable.getPositions();
+        int[] compareWavePairHashcodes = compareWave_PairTable.getPairHashcodes();
+        int[] compareWavePositions = compareWave_PairTable.getPositions();
+
+        // the shared runs, packed as numMatches<<32|runIndex to be sorted by selectivity
+        int numRuns = 0;
+        int[] thisRunStarts = new int[Math.min(thisPairHashcodes.length, compareWavePairHashcodes.length)];
+        int[] compareWaveRunStarts = new int[thisRunStarts.length];
+        long[] packedRuns = new long[thisRunStarts.length];
+        int thisStart = 0;
+        int compareWaveStart = 0;
+        while (thisStart < thisPairHashcodes.length && compareWaveStart < compareWavePairHashcodes.length) {
+            int thisHashNumber = thisPairHashcodes[thisStart];
+            int compareWaveHashNumber = compareWavePairHashcodes[compareWaveStart];
+
+            if (thisHashNumber < compareWaveHashNumber) {
+                thisStart = this_PairTable.getRunEnd(thisStart);
+                continue;
+            }
+            if (thisHashNumber > compareWaveHashNumber) {
+                compareWaveStart = compareWave_PairTable.getRunEnd(compareWaveStart);
+                continue;
+            }
+
+            int thisEnd = this_PairTable.getRunEnd(thisStart);
+            int compareWaveEnd = compareWave_PairTable.getRunEnd(compareWaveStart);
+            long runMatches = (long) (thisEnd - thisStart) * (compareWaveEnd - compareWaveStart);
+            thisRunStarts[numRuns] = thisStart;
+            compareWaveRunStarts[numRuns] = compareWaveStart;
+            packedRuns[numRuns] = runMatches << 32 | numRuns;
+            numRuns++;
+            numMatches += runMatches;
+
+            thisStart = thisEnd;
+            compareWaveStart = compareWaveEnd;
+        }
+        Arrays.sort(packedRuns, 0, numRuns);
+
+        // the leading offset and the highest count of the other offsets, counts only increase so they are tracked exactly
+        int leadingOffset = -1;
+        int leadingCount = 0;
+        int otherCount = 0;
+        // the highest count apart from the leading offset and its neighbours, rescanned when the leading offset changes
+        int runnerUpCount = 0;
+        boolean isRunnerUpChanged = false;
+        long remainingMatches = numMatches;
+        // the leader has to reach the minimum similarity, and one match at least, before the counting can stop
+        int minLeadingCount = Math.max((int) Math.ceil(minSimilarity * numFrames), 1);
+
+        for (int r = 0; r < numRuns; r++) {
+            int runIndex = (int) packedRuns[r];
+            thisStart = thisRunStarts[runIndex];
+            compareWaveStart = compareWaveRunStarts[runIndex];
+            int thisEnd = this_PairTable.getRunEnd(thisStart);
+            int compareWaveEnd = compareWave_PairTable.getRunEnd(compareWaveStart);
+
+            for (int i = thisStart; i < thisEnd; i++) {
+                int shiftedPosition = thisPositions[i] + offsetShift;
+                for (int j = compareWaveStart; j < compareWaveEnd; j++) {
+                    int offset = shiftedPosition - compareWavePositions[j];
+                    int count = ++offsetScores[offset];
+                    if (offset == leadingOffset) {
+                        leadingCount = count;
+                    } else if (count > leadingCount) {
+                        otherCount = leadingCount;
+                        leadingOffset = offset;
+                        leadingCount = count;
+                        isRunnerUpChanged = true;
+                    } else {
+                        if (count > otherCount) {
+                            otherCount = count;
+                        }
+                        if (count > runnerUpCount && Math.abs(offset - leadingOffset) > 1) {
+                            runnerUpCount = count;
+                        }
+                    }
+                }
+            }
+            remainingMatches -= packedRuns[r] >>> 32;
+
+            if (remainingMatches == 0 || leadingCount < minLeadingCount) {
+                continue;
+            }
+
+            // conclusive if no other offset can catch up, or the leader is far enough ahead of the runner-up
+            boolean isConclusive = leadingCount - otherCount > remainingMatches;
+            if (!isConclusive && isRunnerUpChanged && leadingCount < confidenceRatio * Math.max(otherCount, 1)) {
+                runnerUpCount = getRunnerUpCount(offsetScores, leadingOffset);
+                isRunnerUpChanged = false;
+            }
+            // the runner-up counts as one match at least, so a single match is never conclusive
+            if (isConclusive || leadingCount >= confidenceRatio * Math.max(isRunnerUpChanged ? otherCount : runnerUpCount, 1)) {
+                numSkippedMatches = remainingMatches;
+                return;
+            }
+        }
+    }
+
+    // the highest count apart from the leading offset and its neighbours
+    private int getRunnerUpCount(int[] offsetScores, int leadingOffset) {
+        int runnerUpCount = 0;
+        for (int i = 0; i < offsetScores.length; i++) {
+            if (offsetScores[i] > runnerUpCount && Math.abs(i - leadingOffset) > 1) {
+                runnerUpCount = offsetScores[i];
+            }
+        }
+        return runnerUpCount;
     }
 }
\ No newline at end of file
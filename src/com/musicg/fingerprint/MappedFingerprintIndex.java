@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.fingerprint;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * Fingerprint index opened from a file saved by FingerprintIndex.saveIndexAsFile
+ * The file is memory mapped and searched in place, the postings are never loaded into the heap
+ *
+ * File layout (big endian):
+ * header:	magic(4), version(4), pairHashLayout(4), numTracks(4), numHashes(4), numPostings(8)
+ * tracks:	numTracks * (trackId(4), numFrames(4)), sorted by trackId
+ * hashes:	numHashes * pairHashcode(4), sorted
+ * offsets:	(numHashes+1) * postingOffset(8), postings of hashes[i] are in [offsets[i],offsets[i+1])
+ * postings:	numPostings * (trackId(4), frame(4))
+ * 
+ * pairHashLayout is the PairHash layout of the hashes, the clips are paired with it
+ * The header, tracks, hashes and offsets are mapped as one buffer, so they are limited to 2GB, an index over it is refused
+ *
+ * The index is read only and can be searched by multiple threads
+ *
+ * @author jacquet
+ *
+ */
+public class MappedFingerprintIndex extends FingerprintSearcher{
+
+	public static final int MAGIC=0x4d474649;	// "MGFI"
+	public static final int VERSION=2;
+	public static final int HEADER_BYTE_LENGTH=28;
+	public static final int POSTING_BYTE_LENGTH=8;
+
+	// postings are mapped in segments since a mapped buffer is limited to 2GB
+	private static final int SEGMENT_SHIFT=27;	// 2^27 postings, i.e. 1GB, per segment
+	private static final long SEGMENT_MASK=(1L<<SEGMENT_SHIFT)-1;
+
+	private boolean valid;
+	private RandomAccessFile randomAccessFile;
+	private MappedByteBuffer directory;	// header, tracks, hashes and offsets
+	private MappedByteBuffer[] postingSegments;
+	private int numTracks;
+	private int numHashes;
+	private long numPostings;
+	private int hashesPosition;
+	private int offsetsPosition;
+
+	/**
+	 * Constructor
+	 *
+	 * @param filename	index file saved by FingerprintIndex.saveIndexAsFile
+	 */
+	public MappedFingerprintIndex(String filename){
+		postingSegments=new MappedByteBuffer[0];
+		try {
+			randomAccessFile=new RandomAccessFile(filename,"r");
+			valid=loadIndex(randomAccessFile.getChannel());
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		if (!valid){
+			numTracks=0;
+			numHashes=0;
+			numPostings=0;
+		}
+	}
+
+	private boolean loadIndex(FileChannel channel) throws IOException{
+
+		if (channel.size()<HEADER_BYTE_LENGTH){
+			System.err.println("MappedFingerprintIndex: Invalid index file");
+			return false;
+		}
+
+		MappedByteBuffer header=channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTE_LENGTH);
+		if (header.getInt(0)!=MAGIC || header.getInt(4)!=VERSION){
+			System.err.println("MappedFingerprintIndex: Unsupported index format, the index has to be rebuilt");
+			return false;
+		}
+		PairHash pairHash=PairHash.fromLayout(header.getInt(8));
+		if (pairHash==null){
+			System.err.println("MappedFingerprintIndex: Invalid pair hash layout of the index");
+			return false;
+		}
+		setPairHash(pairHash);
+		numTracks=header.getInt(12);
+		numHashes=header.getInt(16);
+		numPostings=header.getLong(20);
+		if (numTracks<0 || numHashes<0 || numPostings<0){
+			System.err.println("MappedFingerprintIndex: Invalid index header");
+			return false;
+		}
+
+		long tracksEnd=HEADER_BYTE_LENGTH+(long)numTracks*8;
+		long hashesEnd=tracksEnd+(long)numHashes*4;
+		long postingsPosition=hashesEnd+((long)numHashes+1)*8;
+
+		long postingsByteLength=channel.size()-postingsPosition;
+		if (postingsByteLength<0 || postingsByteLength%POSTING_BYTE_LENGTH!=0 || postingsByteLength/POSTING_BYTE_LENGTH!=numPostings){
+			System.err.println("MappedFingerprintIndex: Index file is truncated");
+			return false;
+		}
+
+		// the directory is mapped as one buffer, only the postings are segmented
+		if (postingsPosition>Integer.MAX_VALUE){
+			System.err.println("MappedFingerprintIndex: The track and hash directory of the index is over 2GB and cannot be mapped, the index has to be split");
+			return false;
+		}
+		hashesPosition=(int)tracksEnd;
+		offsetsPosition=(int)hashesEnd;
+		directory=channel.map(FileChannel.MapMode.READ_ONLY, 0, postingsPosition);
+
+		int numSegments=(int)((numPostings+SEGMENT_MASK)>>>SEGMENT_SHIFT);
+		postingSegments=new MappedByteBuffer[numSegments];
+		for (int i=0; i<numSegments; i++){
+			long firstPosting=(long)i<<SEGMENT_SHIFT;
+			long segmentPostings=Math.min(numPostings-firstPosting, 1L<<SEGMENT_SHIFT);
+			postingSegments[i]=channel.map(FileChannel.MapMode.READ_ONLY, postingsPosition+firstPosting*POSTING_BYTE_LENGTH, segmentPostings*POSTING_BYTE_LENGTH);
+		}
+
+		return true;
+	}
+
+	void countOffsets(int pairHashcode, int[] clipPositions, int start, int end, TrackOffsetCounter trackOffsetCounter){
+
+		int hashIndex=findPairHashcode(pairHashcode);
+		if (hashIndex<0){
+			return;
+		}
+
+		long startPosting=directory.getLong(offsetsPosition+hashIndex*8);
+		long endPosting=directory.getLong(offsetsPosition+(hashIndex+1)*8);
+
+		trackOffsetCounter.clearPostings();
+		for (long i=startPosting; i<endPosting; i++){
+			MappedByteBuffer segment=postingSegments[(int)(i>>>SEGMENT_SHIFT)];
+			int pointer=(int)(i&SEGMENT_MASK)*POSTING_BYTE_LENGTH;
+			trackOffsetCounter.addPosting(segment.getInt(pointer), segment.getInt(pointer+4));
+		}
+		trackOffsetCounter.countPostings(clipPositions, start, end);
+	}
+
+	void countHits(int pairHashcode, int numClipPairs, TrackOffsetCounter trackOffsetCounter){
+
+		int hashIndex=findPairHashcode(pairHashcode);
+		if (hashIndex<0){
+			return;
+		}
+
+		long startPosting=directory.getLong(offsetsPosition+hashIndex*8);
+		long endPosting=directory.getLong(offsetsPosition+(hashIndex+1)*8);
+		for (long i=startPosting; i<endPosting; i++){
+			MappedByteBuffer segment=postingSegments[(int)(i>>>SEGMENT_SHIFT)];
+			trackOffsetCounter.countHits(segment.getInt((int)(i&SEGMENT_MASK)*POSTING_BYTE_LENGTH), numClipPairs);
+		}
+	}
+
+	public int getNumPostings(int pairHashcode){
+		int hashIndex=findPairHashcode(pairHashcode);
+		if (hashIndex<0){
+			return 0;
+		}
+		return (int)(directory.getLong(offsetsPosition+(hashIndex+1)*8)-directory.getLong(offsetsPosition+hashIndex*8));
+	}
+
+	public HashMap<Integer,Integer> getPairDocumentFrequencies(){
+		HashMap<Integer,Integer> pair_DocumentFrequency_Table=new HashMap<Integer,Integer>();
+		for (int h=0; h<numHashes; h++){
+			long startPosting=directory.getLong(offsetsPosition+h*8);
+			long endPosting=directory.getLong(offsetsPosition+(h+1)*8);
+
+			// the postings of a track are saved together, so the tracks are counted by the changes of track id
+			int numPairTracks=0;
+			int previousTrackId=0;
+			for (long i=startPosting; i<endPosting; i++){
+				MappedByteBuffer segment=postingSegments[(int)(i>>>SEGMENT_SHIFT)];
+				int trackId=segment.getInt((int)(i&SEGMENT_MASK)*POSTING_BYTE_LENGTH);
+				if (i==startPosting || trackId!=previousTrackId){
+					numPairTracks++;
+				}
+				previousTrackId=trackId;
+			}
+			pair_DocumentFrequency_Table.put(directory.getInt(hashesPosition+h*4), numPairTracks);
+		}
+		return pair_DocumentFrequency_Table;
+	}
+
+	// binary search on the sorted hash directory, returns -1 if not found
+	private int findPairHashcode(int pairHashcode){
+		int low=0;
+		int high=numHashes-1;
+		while (low<=high){
+			int mid=(low+high)>>>1;
+			int midHashcode=directory.getInt(hashesPosition+mid*4);
+			if (midHashcode<pairHashcode){
+				low=mid+1;
+			}
+			else if (midHashcode>pairHashcode){
+				high=mid-1;
+			}
+			else{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Close the index file
+	 * The mapped buffers are released by the garbage collector
+	 */
+	public void close(){
+		try {
+			if (randomAccessFile!=null){
+				randomAccessFile.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public boolean isValid(){
+		return valid;
+	}
+
+	public int getNumFrames(int trackId){
+		// binary search on the sorted track table
+		int low=0;
+		int high=numTracks-1;
+		while (low<=high){
+			int mid=(low+high)>>>1;
+			int pointer=HEADER_BYTE_LENGTH+mid*8;
+			int midTrackId=directory.getInt(pointer);
+			if (midTrackId<trackId){
+				low=mid+1;
+			}
+			else if (midTrackId>trackId){
+				high=mid-1;
+			}
+			else{
+				return directory.getInt(pointer+4);
+			}
+		}
+		return 0;
+	}
+
+	public int getNumTracks(){
+		return numTracks;
+	}
+
+	public int getNumPairHashcodes(){
+		return numHashes;
+	}
+
+	public long getNumPostings(){
+		return numPostings;
+	}
+}
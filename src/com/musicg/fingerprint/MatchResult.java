@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.fingerprint;
+
+/**
+ * A track matched by a catalog search, with the offset and similarity of the clip in the track
+ *
+ * @author jacquet
+ *
+ */
+public class MatchResult{
+
+	private int trackId;
+	private int numHits;
+	private FingerprintSimilarity fingerprintSimilarity;
+
+	/**
+	 * Constructor
+	 *
+	 * @param trackId	id of the matched track
+	 * @param numHits	number of clip pairs matched in the track at any offset
+	 * @param fingerprintSimilarity	similarity of the clip at its best offset in the track
+	 */
+	public MatchResult(int trackId, int numHits, FingerprintSimilarity fingerprintSimilarity){
+		this.trackId=trackId;
+		this.numHits=numHits;
+		this.fingerprintSimilarity=fingerprintSimilarity;
+	}
+
+	public int getTrackId(){
+		return trackId;
+	}
+
+	/**
+	 * Get the number of clip pairs matched in the track at any offset, the hit count used to prune the candidate tracks
+	 *
+	 * @return number of hits
+	 */
+	public int getNumHits(){
+		return numHits;
+	}
+
+	/**
+	 * Get the offset of the clip in the track in terms of frame number
+	 *
+	 * @return most similar frame position
+	 */
+	public int getFramePosition(){
+		return fingerprintSimilarity.getMostSimilarFramePosition();
+	}
+
+	/**
+	 * Get the offset of the clip in the track in terms of time in second
+	 *
+	 * @return matched starting time
+	 */
+	public float getTimePosition(){
+		return fingerprintSimilarity.getsetMostSimilarTimePosition();
+	}
+
+	/**
+	 * Get the score, number of features matched at the offset per frame
+	 *
+	 * @return similarity score
+	 */
+	public float getScore(){
+		return fingerprintSimilarity.getScore();
+	}
+
+	/**
+	 * Get the similarity from 0~1
+	 *
+	 * @return similarity
+	 */
+	public float getSimilarity(){
+		return fingerprintSimilarity.getSimilarity();
+	}
+
+	public FingerprintSimilarity getFingerprintSimilarity(){
+		return fingerprintSimilarity;
+	}
+}
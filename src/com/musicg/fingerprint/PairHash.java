@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.fingerprint;
+
+import com.musicg.properties.FingerprintProperties;
+
+/**
+ * Packing of a pair into its hashcode, with explicit bit widths:
+ * hashcode = deltaFrame<<(2*frequencyBits) | frequency2<<frequencyBits | frequency1
+ * where deltaFrame=x2-x1, frequency1=y1 and frequency2=y2 of the pair
+ *
+ * Two pairs have the same hashcode only if they have the same delta frame and frequencies, as long as the values fit the widths
+ * The hashcode is a non-negative int, the widths take 31 bits at most
+ * 
+ * A FingerprintIndex built with a PairHash pairs its tracks, clips and stop pairs with it, and saves its layout with the index file
+ *
+ * @author jacquet
+ *
+ */
+public class PairHash{
+
+	public static final int MAX_BITS=31;	// the hashcodes are non-negative ints
+
+	private int deltaFrameBits;
+	private int frequencyBits;
+	private int deltaFrameMask;
+	private int frequencyMask;
+
+	/**
+	 * Constructor, the bit widths of FingerprintProperties
+	 */
+	public PairHash(){
+		this(FingerprintProperties.getInstance().getPairHashDeltaFrameBits(), FingerprintProperties.getInstance().getPairHashFrequencyBits());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param deltaFrameBits	bits of the frame distance of the pair
+	 * @param frequencyBits	bits of each frequency unit of the pair
+	 * @throws IllegalArgumentException if a width is not positive or the widths do not fit MAX_BITS
+	 */
+	public PairHash(int deltaFrameBits, int frequencyBits){
+		if (!isValid(deltaFrameBits, frequencyBits)){
+			throw new IllegalArgumentException(deltaFrameBits+" delta frame bits and 2x"+frequencyBits+" frequency bits do not fit "+MAX_BITS+" bits");
+		}
+		this.deltaFrameBits=deltaFrameBits;
+		this.frequencyBits=frequencyBits;
+		deltaFrameMask=(1<<deltaFrameBits)-1;
+		frequencyMask=(1<<frequencyBits)-1;
+	}
+
+	/**
+	 * Get the packing of a saved layout
+	 *
+	 * @param layout	deltaFrameBits<<8 | frequencyBits, e.g. the layout of an index file
+	 * @return pair hash of the layout, null if the layout is invalid
+	 * @see #getLayout()
+	 */
+	public static PairHash fromLayout(int layout){
+		int deltaFrameBits=layout>>>8;
+		int frequencyBits=layout&0xff;
+		if (!isValid(deltaFrameBits, frequencyBits)){
+			return null;
+		}
+		return new PairHash(deltaFrameBits, frequencyBits);
+	}
+
+	private static boolean isValid(int deltaFrameBits, int frequencyBits){
+		return deltaFrameBits>=1 && frequencyBits>=1 && deltaFrameBits+2*frequencyBits<=MAX_BITS;
+	}
+
+	/**
+	 * Hash a pair, the values wider than their bits are truncated
+	 *
+	 * @param deltaFrame	x2-x1, frame distance of the pair
+	 * @param frequency1	y1, frequency unit of the earlier point
+	 * @param frequency2	y2, frequency unit of the later point
+	 * @return pair hashcode
+	 */
+	public int pack(int deltaFrame, int frequency1, int frequency2){
+		return (deltaFrame&deltaFrameMask)<<(2*frequencyBits) | (frequency2&frequencyMask)<<frequencyBits | (frequency1&frequencyMask);
+	}
+
+	public int getDeltaFrame(int pairHashcode){
+		return pairHashcode>>>(2*frequencyBits) & deltaFrameMask;
+	}
+
+	public int getFrequency1(int pairHashcode){
+		return pairHashcode & frequencyMask;
+	}
+
+	public int getFrequency2(int pairHashcode){
+		return pairHashcode>>>frequencyBits & frequencyMask;
+	}
+
+	/**
+	 * Check the values fit the bit widths, so the pairs never collide
+	 *
+	 * @param maxDeltaFrame	largest frame distance of a pair
+	 * @param numFrequencyUnits	number of frequency units of the points
+	 * @return true if every pair has its own hashcode
+	 */
+	public boolean isCollisionFree(int maxDeltaFrame, int numFrequencyUnits){
+		return maxDeltaFrame<=deltaFrameMask && numFrequencyUnits-1<=frequencyMask;
+	}
+
+	/**
+	 * Layout of the packing, stored with the saved hashcodes so the files of another layout are not mixed up
+	 *
+	 * @return deltaFrameBits<<8 | frequencyBits
+	 */
+	public int getLayout(){
+		return deltaFrameBits<<8 | frequencyBits;
+	}
+
+	public int getDeltaFrameBits(){
+		return deltaFrameBits;
+	}
+
+	public int getFrequencyBits(){
+		return frequencyBits;
+	}
+}
@@ -16,9 +16,8 @@
 
 package com.musicg.fingerprint;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 import com.musicg.math.quicksort.QuickSortIndexPreserved;
@@ -38,18 +37,18 @@ public class PairManager{
 	private int anchorPointsIntervalLength=fingerprintProperties.getAnchorPointsIntervalLength();
 	private int numAnchorPointsPerInterval=fingerprintProperties.getNumAnchorPointsPerInterval();
 	private int maxTargetZoneDistance=fingerprintProperties.getMaxTargetZoneDistance();
-	private int numFrequencyUnits=fingerprintProperties.getNumFrequencyUnits();
+	private int numSpectrogramFrequencyUnits=fingerprintProperties.getNumSpectrogramFrequencyUnits();	// range of the y of the points
+	private PairHash pairHash;
 	
 	private int maxPairs;
 	private boolean isReferencePairing;
-	private HashMap<Integer,Boolean> stopPairTable=new HashMap<Integer,Boolean>();
+	private StopPairList stopPairList;	// null for no stop pairs
 	
 	/**
 	 * Constructor
 	 */
 	public PairManager(){
-		maxPairs=fingerprintProperties.getRefMaxActivePairs();
-		isReferencePairing=true;
+		this(true);
 	}
 	
 	/**
@@ -58,6 +57,17 @@ public class PairManager{
 	 * @param isReferencePairing
 	 */
 	public PairManager(boolean isReferencePairing){
+		this(isReferencePairing, new PairHash());
+	}
+	
+	/**
+	 * Constructor, the pairs are hashed by the given packing, e.g. the one of the index they are searched in
+	 * 
+	 * @param isReferencePairing	true for pairing a reference, false for a sample
+	 * @param pairHash	packing of the pair hashcodes
+	 */
+	public PairManager(boolean isReferencePairing, PairHash pairHash){
+		this.pairHash=pairHash;
 		if (isReferencePairing){
 			maxPairs=fingerprintProperties.getRefMaxActivePairs();
 		}
@@ -65,6 +75,28 @@ public class PairManager{
 			maxPairs=fingerprintProperties.getSampleMaxActivePairs();
 		}
 		this.isReferencePairing=isReferencePairing;
+		if (!pairHash.isCollisionFree(maxTargetZoneDistance, numSpectrogramFrequencyUnits)){
+			System.err.println("PairManager: Target zone distance "+maxTargetZoneDistance+" or "+numSpectrogramFrequencyUnits+" frequency units do not fit the pair hash bits, different pairs can have the same hashcode");
+		}
+	}
+	
+	/**
+	 * Get the packing of the pair hashcodes
+	 * 
+	 * @return pair hash
+	 */
+	public PairHash getPairHash(){
+		return pairHash;
+	}
+	
+	/**
+	 * Set the stop pairs, which are skipped in sample pairing, e.g. the pairs too common in the indexed catalog
+	 * A skipped stop pair still takes one of the maxPairs pairs of its anchor point
+	 * 
+	 * @param stopPairList	stop pairs, null for no stop pairs
+	 */
+	public void setStopPairList(StopPairList stopPairList){
+		this.stopPairList=stopPairList;
 	}
 	
 	/**
@@ -74,57 +106,114 @@ public class PairManager{
 	 * 
 	 * @param fingerprint	fingerprint bytes
 	 * @return pair-positionList HashMap
+	 * @see #getPairTable(byte[]) for the primitive representation
 	 */
 	public HashMap<Integer,List<Integer>> getPair_PositionList_Table(byte[] fingerprint){
 		
-		List<int[]> pairPositionList=getPairPositionList(fingerprint);
+		PairTable pairTable=getPairTable(fingerprint);
+		int[] pairHashcodes=pairTable.getPairHashcodes();
+		int[] positions=pairTable.getPositions();
 		
 		// table to store pair:pos,pos,pos,...;pair2:pos,pos,pos,....
 		HashMap<Integer,List<Integer>> pair_positionList_table=new HashMap<Integer,List<Integer>>();
 		
-		// get all pair_positions from list, use a table to collect the data group by pair hashcode
-		Iterator<int[]> pairPositionListIterator=pairPositionList.iterator();
-		while (pairPositionListIterator.hasNext()){
-			int[] pair_position=pairPositionListIterator.next();
-			//System.out.println(pair_position[0]+","+pair_position[1]);
-			
-			// group by pair-hashcode, i.e.: <pair,List<position>>
-			if (pair_positionList_table.containsKey(pair_position[0])){
-				pair_positionList_table.get(pair_position[0]).add(pair_position[1]);
+		// the pair table is grouped by pair hashcode already, i.e.: <pair,List<position>>
+		int start=0;
+		while (start<pairHashcodes.length){
+			int end=pairTable.getRunEnd(start);
+			List<Integer> positionList=new ArrayList<Integer>(end-start);
+			for (int i=start; i<end; i++){
+				positionList.add(positions[i]);
 			}
-			else{
-				List<Integer> positionList=new LinkedList<Integer>();
-				positionList.add(pair_position[1]);
-				pair_positionList_table.put(pair_position[0], positionList);
-			}
-			// end group by pair-hashcode, i.e.: <pair,List<position>>
+			pair_positionList_table.put(pairHashcodes[start], positionList);
+			start=end;
 		}
-		// end get all pair_positions from list, use a table to collect the data group by pair hashcode
 		
 		return pair_positionList_table;
 	}
 	
-	// this return list contains: int[0]=pair_hashcode, int[1]=position
-	private List<int[]> getPairPositionList(byte[] fingerprint){
+	/**
+	 * Get a pair-position table
+	 * The pairs are sorted by the hashed pair, so the positions which have the same hashed pair are stored contiguously
+	 * 
+	 * @param fingerprint	fingerprint bytes
+	 * @return pair-position table
+	 */
+	public PairTable getPairTable(byte[] fingerprint){
 		
-		int numFrames=FingerprintManager.getNumFrames(fingerprint);
+		int numCoordinates=fingerprint.length/8;
+		
+		// coordinates sorted by intensity, descending
+		int[] sortedX=new int[numCoordinates];
+		int[] sortedY=new int[numCoordinates];
+		getSortedCoordinates(fingerprint, sortedX, sortedY);
+		
+		return getPairTable(FingerprintManager.getNumFrames(fingerprint), sortedX, sortedY);
+	}
+	
+	/**
+	 * Get a pair-position table of fingerprint points, same as the table of the fingerprint bytes of the points
+	 * The points may have more frames than the fingerprint bytes can store
+	 * 
+	 * @param fingerprintPoints	fingerprint points
+	 * @return pair-position table
+	 */
+	public PairTable getPairTable(FingerprintPoints fingerprintPoints){
+		
+		int numCoordinates=fingerprintPoints.getNumPoints();
+		int[] frames=fingerprintPoints.getFrames();
+		int[] frequencyUnits=fingerprintPoints.getFrequencyUnits();
+		int[] intensities=new int[numCoordinates];	// the arrays of the points may be longer than numCoordinates
+		System.arraycopy(fingerprintPoints.getIntensities(), 0, intensities, 0, numCoordinates);
+		
+		// coordinates sorted by intensity, descending
+		QuickSortIndexPreserved quicksort=new QuickSortIndexPreserved(intensities);
+		int[] sortIndexes=quicksort.getSortIndexes();
+		int[] sortedX=new int[numCoordinates];
+		int[] sortedY=new int[numCoordinates];
+		for (int i=0; i<numCoordinates; i++){
+			sortedX[i]=frames[sortIndexes[numCoordinates-1-i]];
+			sortedY[i]=frequencyUnits[sortIndexes[numCoordinates-1-i]];
+		}
+		
+		return getPairTable(fingerprintPoints.getNumFrames(), sortedX, sortedY);
+	}
+	
+	// pair up the coordinates sorted by intensity
+	// the targets of an anchor are taken in intensity order from the buckets of its target zone, the same targets as scanning all coordinates
+	private PairTable getPairTable(int numFrames, int[] sortedX, int[] sortedY){
+		
+		int numCoordinates=sortedX.length;
 
 		// table for paired frames
 		byte[] pairedFrameTable=new byte[numFrames/anchorPointsIntervalLength+1];	// each second has numAnchorPointsPerSecond pairs only
 		// end table for paired frames
 		
-		List<int[]> pairList=new LinkedList<int[]>();
-		List<int[]> sortedCoordinateList=getSortedCoordinateList(fingerprint);
+		// each anchor point makes maxPairs pairs at most
+		int[] pairHashcodes=new int[numCoordinates*maxPairs];
+		int[] pairPositions=new int[numCoordinates*maxPairs];
+		int numPairsInTable=0;
+		
+		TargetZoneBuckets buckets=new TargetZoneBuckets(sortedX, sortedY);
+		int[] cursors=new int[2*maxTargetZoneDistance+1];	// next coordinate of each frame's bucket in the target zone
+		int[] ends=new int[2*maxTargetZoneDistance+1];
 
-		Iterator<int[]> anchorPointListIterator=sortedCoordinateList.iterator();
-		while (anchorPointListIterator.hasNext()){
-			int[] anchorPoint=anchorPointListIterator.next();
-			int anchorX=anchorPoint[0];
-			int anchorY=anchorPoint[1];
+		for (int a=0; a<numCoordinates; a++){
+			int anchorX=sortedX[a];
+			int anchorY=sortedY[a];
 			int numPairs=0;
 			
-			Iterator<int[]> targetPointListIterator=sortedCoordinateList.iterator();
-			while (targetPointListIterator.hasNext()){
+			// buckets of the frames within maxTargetZoneDistance, in the anchor's filter bank
+			int fromX=Math.max(anchorX-maxTargetZoneDistance, 0);
+			int toX=Math.min(anchorX+maxTargetZoneDistance, buckets.maxX);
+			int numZoneBuckets=toX-fromX+1;
+			for (int i=0; i<numZoneBuckets; i++){
+				int bucket=buckets.getBucket(fromX+i, anchorY/bandwidthPerBank);
+				cursors[i]=buckets.bucketStarts[bucket];
+				ends[i]=buckets.bucketStarts[bucket+1];
+			}
+			
+			while (true){
 				
 				if (numPairs>=maxPairs){
 					break;
@@ -133,10 +222,23 @@ public class PairManager{
 				if (isReferencePairing && pairedFrameTable[anchorX/anchorPointsIntervalLength]>=numAnchorPointsPerInterval){
 					break;
 				}
+				
+				// the most intense coordinate left in the zone
+				int nextBucket=-1;
+				int t=numCoordinates;
+				for (int i=0; i<numZoneBuckets; i++){
+					if (cursors[i]<ends[i] && buckets.bucketCoordinates[cursors[i]]<t){
+						t=buckets.bucketCoordinates[cursors[i]];
+						nextBucket=i;
+					}
+				}
+				if (nextBucket==-1){
+					break;
+				}
+				cursors[nextBucket]++;
 
-				int[] targetPoint=targetPointListIterator.next();
-				int targetX=targetPoint[0];
-				int targetY=targetPoint[1];
+				int targetX=sortedX[t];
+				int targetY=sortedY[t];
 				
 				if (anchorX==targetX && anchorY==targetY){
 					continue;
@@ -157,40 +259,72 @@ public class PairManager{
 					y1=targetY;	
 				}
 				
-				// check target zone
-				if ((x2-x1)>maxTargetZoneDistance){
-					continue;
-				}
-				// end check target zone
-				
-				// check filter bank zone				
-				if (!(y1/bandwidthPerBank == y2/bandwidthPerBank)){
-					continue;	// same filter bank should have equal value
-				}
-				// end check filter bank zone
-				
-				int pairHashcode=(x2-x1)*numFrequencyUnits*numFrequencyUnits+y2*numFrequencyUnits+y1;	
+				// the target zone and filter bank zone are checked by the buckets
+				int pairHashcode=pairHash.pack(x2-x1, y1, y2);
 				
 				// stop list applied on sample pairing only
-				if (!isReferencePairing && stopPairTable.containsKey(pairHashcode)){
+				if (!isReferencePairing && stopPairList!=null && stopPairList.contains(pairHashcode)){
 					numPairs++;	// no reservation
 					continue;	// escape this point only							
 				}
 				// end stop list applied on sample pairing only
 				
 				// pass all rules
-				pairList.add(new int[]{pairHashcode,anchorX});
+				pairHashcodes[numPairsInTable]=pairHashcode;
+				pairPositions[numPairsInTable]=anchorX;
+				numPairsInTable++;
 				pairedFrameTable[anchorX/anchorPointsIntervalLength]++;
-				//System.out.println(anchorX+","+anchorY+"&"+targetX+","+targetY+":"+pairHashcode+" ("+pairedFrameTable[anchorX/anchorPointsIntervalLength]+")");
 				numPairs++;
 				// end pair up the points
 			}
 		}
 		
-		return pairList;
+		return new PairTable(pairHashcodes, pairPositions, numPairsInTable);
+	}
+	
+	/**
+	 * Coordinates grouped by frame and filter bank, each bucket lists its coordinates in intensity order
+	 */
+	private class TargetZoneBuckets{
+		
+		int maxX;
+		int numBanks;
+		int[] bucketStarts;	// coordinates of bucket b are bucketCoordinates[bucketStarts[b]] to bucketCoordinates[bucketStarts[b+1]-1]
+		int[] bucketCoordinates;	// indexes of the sorted coordinates
+		
+		TargetZoneBuckets(int[] sortedX, int[] sortedY){
+			
+			int numCoordinates=sortedX.length;
+			int maxY=0;
+			for (int i=0; i<numCoordinates; i++){
+				maxX=Math.max(maxX, sortedX[i]);
+				maxY=Math.max(maxY, sortedY[i]);
+			}
+			numBanks=maxY/bandwidthPerBank+1;
+			
+			// counting sort by bucket, the coordinates are added in intensity order
+			bucketStarts=new int[(maxX+1)*numBanks+1];
+			for (int i=0; i<numCoordinates; i++){
+				bucketStarts[getBucket(sortedX[i], sortedY[i]/bandwidthPerBank)+1]++;
+			}
+			for (int b=0; b<bucketStarts.length-1; b++){
+				bucketStarts[b+1]+=bucketStarts[b];
+			}
+			int[] fillPointers=new int[bucketStarts.length-1];
+			System.arraycopy(bucketStarts, 0, fillPointers, 0, fillPointers.length);
+			bucketCoordinates=new int[numCoordinates];
+			for (int i=0; i<numCoordinates; i++){
+				bucketCoordinates[fillPointers[getBucket(sortedX[i], sortedY[i]/bandwidthPerBank)]++]=i;
+			}
+		}
+		
+		int getBucket(int x, int bank){
+			return x*numBanks+bank;
+		}
 	}
 		
-	private List<int[]> getSortedCoordinateList(byte[] fingerprint){
+	// sortedX[i],sortedY[i] is the coordinate of the i-th highest intensity point
+	private void getSortedCoordinates(byte[] fingerprint, int[] sortedX, int[] sortedY){
 		// each point data is 8 bytes 
 		// first 2 bytes is x
 		// next 2 bytes is y
@@ -208,14 +342,13 @@ public class PairManager{
 		QuickSortIndexPreserved quicksort=new QuickSortIndexPreserved(intensities);
 		int[] sortIndexes=quicksort.getSortIndexes();
 		
-		List<int[]> sortedCoordinateList=new LinkedList<int[]>();
+		int count=0;
 		for (int i=sortIndexes.length-1; i>=0; i--){
 			int pointer=sortIndexes[i]*8;
-			int x=(int)(fingerprint[pointer]&0xff)<<8 | (int)(fingerprint[pointer+1]&0xff);
-			int y=(int)(fingerprint[pointer+2]&0xff)<<8 | (int)(fingerprint[pointer+3]&0xff);
-			sortedCoordinateList.add(new int[]{x,y});
+			sortedX[count]=(int)(fingerprint[pointer]&0xff)<<8 | (int)(fingerprint[pointer+1]&0xff);
+			sortedY[count]=(int)(fingerprint[pointer+2]&0xff)<<8 | (int)(fingerprint[pointer+3]&0xff);
+			count++;
 		}
-		return sortedCoordinateList;
 	}
 
 	/**
@@ -225,7 +358,7 @@ public class PairManager{
 	 * @return byte array
 	 */
 	public static byte[] pairHashcodeToBytes(int pairHashcode){	
-		return new byte[]{(byte)(pairHashcode>>8),(byte)pairHashcode};
+		return new byte[]{(byte)(pairHashcode>>24),(byte)(pairHashcode>>16),(byte)(pairHashcode>>8),(byte)pairHashcode};
 	}
 	
 	/**
@@ -235,6 +368,6 @@ public class PairManager{
 	 * @return hashed pair
 	 */
 	public static int pairBytesToHashcode(byte[] pairBytes){	
-		return (int)(pairBytes[0]&0xFF)<<8|(int)(pairBytes[1]&0xFF);
+		return (int)(pairBytes[0]&0xFF)<<24|(int)(pairBytes[1]&0xFF)<<16|(int)(pairBytes[2]&0xFF)<<8|(int)(pairBytes[3]&0xFF);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.fingerprint;
+
+import java.util.Arrays;
+
+/**
+ * Pair-position table stored in two parallel primitive arrays sorted by pair hashcode
+ * All positions of the same hashed pair are contiguous, in the order they were paired
+ *
+ * e.g. pairHashcodes: 3,3,7,9,9,9
+ *      positions:     0,5,2,1,4,8
+ *
+ * @author jacquet
+ *
+ */
+public class PairTable{
+
+	private int[] pairHashcodes;
+	private int[] positions;
+	private int numPairHashcodes;
+
+	/**
+	 * Constructor, sort the pairs by hashcode
+	 *
+	 * @param pairHashcodes	hashed pairs, in pairing order
+	 * @param positions	positions of the pairs
+	 * @param numPairs	number of valid elements in the arrays
+	 */
+	public PairTable(int[] pairHashcodes, int[] positions, int numPairs){
+
+		// sort by hashcode, the pairing order is kept by packing the original index in the low bits
+		long[] sortKeys=new long[numPairs];
+		for (int i=0; i<numPairs; i++){
+			sortKeys[i]=(long)pairHashcodes[i]<<32 | i;
+		}
+		Arrays.sort(sortKeys);
+
+		this.pairHashcodes=new int[numPairs];
+		this.positions=new int[numPairs];
+		numPairHashcodes=0;
+		for (int i=0; i<numPairs; i++){
+			int index=(int)sortKeys[i];
+			this.pairHashcodes[i]=pairHashcodes[index];
+			this.positions[i]=positions[index];
+			if (i==0 || this.pairHashcodes[i]!=this.pairHashcodes[i-1]){
+				numPairHashcodes++;
+			}
+		}
+	}
+
+	/**
+	 * Number of pairs in the table
+	 *
+	 * @return number of pairs
+	 */
+	public int size(){
+		return pairHashcodes.length;
+	}
+
+	/**
+	 * Number of distinct pair hashcodes in the table
+	 *
+	 * @return number of distinct pair hashcodes
+	 */
+	public int getNumPairHashcodes(){
+		return numPairHashcodes;
+	}
+
+	/**
+	 * Get the sorted pair hashcodes
+	 *
+	 * @return pair hashcodes, should not be modified
+	 */
+	public int[] getPairHashcodes(){
+		return pairHashcodes;
+	}
+
+	/**
+	 * Get the positions, positions[i] is the position of pairHashcodes[i]
+	 *
+	 * @return positions, should not be modified
+	 */
+	public int[] getPositions(){
+		return positions;
+	}
+
+	/**
+	 * Get the end (exclusive) of the run of the same pair hashcode
+	 *
+	 * @param start	start index of the run
+	 * @return end index of the run
+	 */
+	public int getRunEnd(int start){
+		int pairHashcode=pairHashcodes[start];
+		int end=start+1;
+		while (end<pairHashcodes.length && pairHashcodes[end]==pairHashcode){
+			end++;
+		}
+		return end;
+	}
+
+	/**
+	 * Find the start of the run of a pair hashcode
+	 *
+	 * @param pairHashcode	hashed pair
+	 * @return start index of the run, -1 if the pair hashcode is not in the table
+	 */
+	public int indexOf(int pairHashcode){
+		int low=0;
+		int high=pairHashcodes.length-1;
+		int index=-1;
+		while (low<=high){
+			int mid=(low+high)>>>1;
+			if (pairHashcodes[mid]<pairHashcode){
+				low=mid+1;
+			}
+			else{
+				if (pairHashcodes[mid]==pairHashcode){
+					index=mid;
+				}
+				high=mid-1;
+			}
+		}
+		return index;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.fingerprint;
+
+/**
+ * Growable list of packed postings of a pair hashcode
+ * Each posting is a long which the high 32 bits is the track id and the low 32 bits is the frame position
+ *
+ * @author jacquet
+ *
+ */
+class PostingList{
+
+	private static final int INITIAL_CAPACITY=4;
+
+	private long[] postings;
+	private int size;
+
+	/**
+	 * Constructor
+	 */
+	public PostingList(){
+		postings=new long[INITIAL_CAPACITY];
+		size=0;
+	}
+
+	/**
+	 * Append a posting to the list
+	 *
+	 * @param trackId	id of the track
+	 * @param frame	frame position of the pair in the track
+	 */
+	public void add(int trackId, int frame){
+		if (size==postings.length){
+			long[] newPostings=new long[postings.length*2];
+			System.arraycopy(postings, 0, newPostings, 0, size);
+			postings=newPostings;
+		}
+		postings[size++]=pack(trackId,frame);
+	}
+
+	/**
+	 * Get the posting array, only the first size() elements are valid
+	 *
+	 * @return packed postings
+	 */
+	public long[] getPostings(){
+		return postings;
+	}
+
+	/**
+	 * Number of postings in the list
+	 *
+	 * @return number of postings
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Pack the track id and frame position into a posting
+	 *
+	 * @param trackId	id of the track
+	 * @param frame	frame position
+	 * @return packed posting
+	 */
+	public static long pack(int trackId, int frame){
+		return (long)trackId<<32 | (frame&0xffffffffL);
+	}
+
+	/**
+	 * Get the track id of a packed posting
+	 *
+	 * @param posting	packed posting
+	 * @return track id
+	 */
+	public static int getTrackId(long posting){
+		return (int)(posting>>>32);
+	}
+
+	/**
+	 * Get the frame position of a packed posting
+	 *
+	 * @param posting	packed posting
+	 * @return frame position
+	 */
+	public static int getFrame(long posting){
+		return (int)posting;
+	}
+}
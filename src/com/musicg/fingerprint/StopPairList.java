@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.fingerprint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+/**
+ * Pair hashcodes too common in a catalog to tell the tracks apart
+ * A stop pair is skipped when a clip is paired, so its long posting list is never scanned in a search
+ *
+ * File layout (big endian):
+ * header:	magic(4), version(4), pairHashLayout(4), numTracks(4), numPairs(4)
+ * pairs:	numPairs * (pairHashcode(4), documentFrequency(4)), sorted by pairHashcode
+ * 
+ * pairHashLayout is the PairHash layout of the pairs, the list is only set to an index of the same layout
+ *
+ * A list is read only and can be shared by multiple threads
+ *
+ * @author jacquet
+ *
+ */
+public class StopPairList{
+
+	public static final int MAGIC=0x4d475350;	// "MGSP"
+	public static final int VERSION=2;
+
+	private boolean valid;
+	private PairHash pairHash=new PairHash();	// packing of the pairs, the one of the catalog index
+	private int numTracks;	// number of tracks of the catalog
+	private int[] pairHashcodes;	// sorted
+	private int[] documentFrequencies;	// number of tracks having the pair
+
+	/**
+	 * Constructor, the pairs are hashed by the bit widths of FingerprintProperties
+	 *
+	 * @param numTracks	number of tracks of the catalog
+	 * @param pairHashcodes	stop pairs
+	 * @param documentFrequencies	number of tracks having each stop pair
+	 */
+	public StopPairList(int numTracks, int[] pairHashcodes, int[] documentFrequencies){
+		this(new PairHash(), numTracks, pairHashcodes, documentFrequencies);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param pairHash	packing of the pairs, the one of the catalog index
+	 * @param numTracks	number of tracks of the catalog
+	 * @param pairHashcodes	stop pairs
+	 * @param documentFrequencies	number of tracks having each stop pair
+	 */
+	public StopPairList(PairHash pairHash, int numTracks, int[] pairHashcodes, int[] documentFrequencies){
+		this.pairHash=pairHash;
+		this.numTracks=numTracks;
+		this.pairHashcodes=new int[pairHashcodes.length];
+		this.documentFrequencies=new int[pairHashcodes.length];
+
+		// sorted by pair hashcode for the binary search
+		long[] packedPairs=new long[pairHashcodes.length];
+		for (int i=0; i<pairHashcodes.length; i++){
+			packedPairs[i]=(long)pairHashcodes[i]<<32 | (documentFrequencies[i]&0xffffffffL);
+		}
+		Arrays.sort(packedPairs);
+		for (int i=0; i<packedPairs.length; i++){
+			this.pairHashcodes[i]=(int)(packedPairs[i]>>32);
+			this.documentFrequencies[i]=(int)packedPairs[i];
+		}
+		valid=true;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param filename	stop pair file saved by saveAsFile
+	 */
+	public StopPairList(String filename){
+		pairHashcodes=new int[0];
+		documentFrequencies=new int[0];
+		// the stream is closed even if a read fails
+		try (DataInputStream dis=new DataInputStream(new BufferedInputStream(new FileInputStream(filename),1<<16))) {
+			valid=loadPairs(dis);
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		if (!valid){
+			numTracks=0;
+			pairHashcodes=new int[0];
+			documentFrequencies=new int[0];
+		}
+	}
+
+	private boolean loadPairs(DataInputStream dis) throws IOException{
+
+		if (dis.readInt()!=MAGIC || dis.readInt()!=VERSION){
+			System.err.println("StopPairList: Unsupported stop pair format, the list has to be rebuilt");
+			return false;
+		}
+		PairHash filePairHash=PairHash.fromLayout(dis.readInt());
+		if (filePairHash==null){
+			System.err.println("StopPairList: Invalid pair hash layout of the list");
+			return false;
+		}
+		pairHash=filePairHash;
+		numTracks=dis.readInt();
+		int numPairs=dis.readInt();
+
+		pairHashcodes=new int[numPairs];
+		documentFrequencies=new int[numPairs];
+		for (int i=0; i<numPairs; i++){
+			pairHashcodes[i]=dis.readInt();
+			documentFrequencies[i]=dis.readInt();
+			if (i>0 && pairHashcodes[i]<=pairHashcodes[i-1]){
+				System.err.println("StopPairList: Stop pairs are not sorted");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Take the pairs of an index found in more than a fraction of its tracks
+	 * A pair of a single track is never taken
+	 *
+	 * @param searcher	index of the catalog
+	 * @param maxDocumentFrequency	fraction of the tracks, e.g. 0.2 takes the pairs found in more than 20% of the tracks
+	 * @return stop pairs of the index
+	 */
+	public static StopPairList build(FingerprintSearcher searcher, float maxDocumentFrequency){
+
+		int numTracks=searcher.getNumTracks();
+		HashMap<Integer,Integer> pair_DocumentFrequency_Table=searcher.getPairDocumentFrequencies();
+
+		int[] pairHashcodes=new int[pair_DocumentFrequency_Table.size()];
+		int[] documentFrequencies=new int[pair_DocumentFrequency_Table.size()];
+		int numPairs=0;
+		Iterator<Entry<Integer,Integer>> pairIterator=pair_DocumentFrequency_Table.entrySet().iterator();
+		while (pairIterator.hasNext()){
+			Entry<Integer,Integer> entry=pairIterator.next();
+			int documentFrequency=entry.getValue();
+			if (documentFrequency>1 && documentFrequency>maxDocumentFrequency*numTracks){
+				pairHashcodes[numPairs]=entry.getKey();
+				documentFrequencies[numPairs]=documentFrequency;
+				numPairs++;
+			}
+		}
+
+		return new StopPairList(searcher.getPairHash(), numTracks, Arrays.copyOf(pairHashcodes, numPairs), Arrays.copyOf(documentFrequencies, numPairs));
+	}
+
+	/**
+	 * Save the stop pairs to a file
+	 *
+	 * @param filename	stop pair filename
+	 */
+	public void saveAsFile(String filename){
+		File outFile=new File(filename);
+		if (outFile.getParentFile()!=null){
+			outFile.getParentFile().mkdirs();
+		}
+		// the stream is closed even if a write fails
+		try (DataOutputStream dos=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile),1<<16))) {
+
+			// header
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeInt(pairHash.getLayout());
+			dos.writeInt(numTracks);
+			dos.writeInt(pairHashcodes.length);
+
+			// pairs
+			for (int i=0; i<pairHashcodes.length; i++){
+				dos.writeInt(pairHashcodes[i]);
+				dos.writeInt(documentFrequencies[i]);
+			}
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Check a pair is a stop pair or not
+	 *
+	 * @param pairHashcode	hashed pair
+	 * @return true if the pair is a stop pair
+	 */
+	public boolean contains(int pairHashcode){
+		return Arrays.binarySearch(pairHashcodes, pairHashcode)>=0;
+	}
+
+	/**
+	 * Number of tracks having a stop pair
+	 *
+	 * @param pairHashcode	hashed pair
+	 * @return document frequency of the pair, 0 if it is not a stop pair
+	 */
+	public int getDocumentFrequency(int pairHashcode){
+		int index=Arrays.binarySearch(pairHashcodes, pairHashcode);
+		return index<0?0:documentFrequencies[index];
+	}
+
+	public boolean isValid(){
+		return valid;
+	}
+
+	public int getNumTracks(){
+		return numTracks;
+	}
+
+	public int size(){
+		return pairHashcodes.length;
+	}
+
+	public int[] getPairHashcodes(){
+		return pairHashcodes;
+	}
+
+	/**
+	 * Get the packing of the pairs, the list is only set to an index of the same layout
+	 *
+	 * @return pair hash
+	 */
+	public PairHash getPairHash(){
+		return pairHash;
+	}
+}
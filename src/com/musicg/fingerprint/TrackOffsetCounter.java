@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.fingerprint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Count the frame offsets of the matched pairs per track, and rank the offsets to get the similarity of each track
+ * The matched pairs are counted in a CountTable keyed by the packed trackId<<32|offset, so a match costs one lookup and no allocation
+ * 
+ * The hits of the tracks can be counted first to select the candidate tracks, then only the offsets of the candidates are counted
+ * The hits of a track, i.e. its matched pairs at any offset, bound the score of every offset of the track
+ * 
+ * The postings of a pair hashcode are added once, filtered to the candidates, then counted against every clip position of the pair
+ *
+ * @author jacquet
+ *
+ */
+class TrackOffsetCounter{
+
+	private static final int INITIAL_SIZE=1024;
+
+	private CountTable offsetTable=new CountTable(INITIAL_SIZE);	// count of each packed trackId<<32|offset
+
+	// best offset of each counted track, set by rankOffsets()
+	private int numRankedTracks=-1;	// -1 until ranked
+	private int[] rankedTrackIds;
+	private int[] bestCounts;
+	private int[] bestOffsets;
+	private int[] bestNeighbourScores;
+	private CountTable hitTable=new CountTable(INITIAL_SIZE);	// hits of each trackId
+	private int[] candidateTrackIds;	// sorted, null for counting the offsets of all tracks
+
+	// candidate postings of the current pair hashcode
+	private int numPostings;
+	private int[] postingTrackIds=new int[INITIAL_SIZE];
+	private int[] postingFrames=new int[INITIAL_SIZE];
+
+	// count a matched pair, the offset is the frame position in the track minus the frame position in the clip
+	private void count(int trackId, int offset){
+		offsetTable.add(pack(trackId, offset), 1);
+		numRankedTracks=-1;
+	}
+
+	/**
+	 * Start adding the postings of a pair hashcode
+	 */
+	public void clearPostings(){
+		numPostings=0;
+	}
+
+	/**
+	 * Add a posting of the current pair hashcode, kept only if the track is a candidate
+	 *
+	 * @param trackId	id of the track of the posting
+	 * @param frame	frame position of the pair in the track
+	 */
+	public void addPosting(int trackId, int frame){
+		if (candidateTrackIds!=null && Arrays.binarySearch(candidateTrackIds, trackId)<0){
+			return;
+		}
+		if (numPostings==postingTrackIds.length){
+			postingTrackIds=Arrays.copyOf(postingTrackIds, numPostings*2);
+			postingFrames=Arrays.copyOf(postingFrames, numPostings*2);
+		}
+		postingTrackIds[numPostings]=trackId;
+		postingFrames[numPostings]=frame;
+		numPostings++;
+	}
+
+	/**
+	 * Count the offsets between every added posting and every clip position of the pair hashcode
+	 *
+	 * @param clipPositions	frame positions of the clip pairs
+	 * @param start	first index of the pair hashcode in clipPositions
+	 * @param end	end index (exclusive) of the pair hashcode in clipPositions
+	 */
+	public void countPostings(int[] clipPositions, int start, int end){
+		for (int c=start; c<end; c++){
+			int clipPosition=clipPositions[c];
+			for (int i=0; i<numPostings; i++){
+				count(postingTrackIds[i], postingFrames[i]-clipPosition);
+			}
+		}
+	}
+
+	// the offset is biased, so a key is never Long.MIN_VALUE: the offset of a match is a frame difference, never Integer.MIN_VALUE
+	private static long pack(int trackId, int offset){
+		return (long)trackId<<32 | ((offset^0x80000000)&0xffffffffL);
+	}
+
+	private static int getTrackId(long key){
+		return (int)(key>>32);
+	}
+
+	private static int getOffset(long key){
+		return (int)key^0x80000000;
+	}
+
+	// the best offset of each track in one pass over the counted offsets
+	private void rankOffsets(){
+		if (numRankedTracks>=0){
+			return;
+		}
+
+		CountTable trackIndexTable=new CountTable(INITIAL_SIZE);	// index+1 of each track
+		numRankedTracks=0;
+		rankedTrackIds=new int[INITIAL_SIZE];
+		bestCounts=new int[INITIAL_SIZE];
+		bestOffsets=new int[INITIAL_SIZE];
+		bestNeighbourScores=new int[INITIAL_SIZE];
+
+		for (int slot=0; slot<offsetTable.getCapacity(); slot++){
+			if (!offsetTable.isUsed(slot)){
+				continue;
+			}
+			long key=offsetTable.getKey(slot);
+			int trackId=getTrackId(key);
+			int offset=getOffset(key);
+			int count=offsetTable.getCount(slot);
+
+			int index=trackIndexTable.get(trackId)-1;
+			if (index<0){
+				index=numRankedTracks++;
+				if (index==rankedTrackIds.length){
+					rankedTrackIds=Arrays.copyOf(rankedTrackIds, index*2);
+					bestCounts=Arrays.copyOf(bestCounts, index*2);
+					bestOffsets=Arrays.copyOf(bestOffsets, index*2);
+					bestNeighbourScores=Arrays.copyOf(bestNeighbourScores, index*2);
+				}
+				trackIndexTable.add(trackId, index+1);
+				rankedTrackIds[index]=trackId;
+				bestCounts[index]=0;
+				bestNeighbourScores[index]=0;
+			}
+
+			// ranked as FingerprintSimilarityComputer ranks the offsets, the neighbours are looked up for the offsets of the best count only
+			if (count<bestCounts[index]){
+				continue;
+			}
+			int neighbourScore=FingerprintSimilarityComputer.getNeighbourScore(offsetTable.get(pack(trackId, offset-1)), offsetTable.get(pack(trackId, offset+1)));
+			if (FingerprintSimilarityComputer.isBetterOffset(count, neighbourScore, offset, bestCounts[index], bestNeighbourScores[index], bestOffsets[index])){
+				bestCounts[index]=count;
+				bestOffsets[index]=offset;
+				bestNeighbourScores[index]=neighbourScore;
+			}
+		}
+	}
+
+	/**
+	 * Count the hits of a track without their offsets
+	 *
+	 * @param trackId	id of the matched track
+	 * @param numHits	number of matched pairs, e.g. the clip pairs of a pair hashcode for a posting of the track
+	 */
+	public void countHits(int trackId, int numHits){
+		hitTable.add(trackId, numHits);
+	}
+
+	/**
+	 * Select the tracks of the highest score bounds, i.e. hits per frame, as the candidates
+	 * The offsets counted afterward are kept for the candidates only
+	 *
+	 * @param searcher	searcher which provides the number of frames of the tracks
+	 * @param clipNumFrames	number of frames of the clip
+	 * @param numCandidates	number of candidate tracks
+	 */
+	public void selectCandidates(FingerprintSearcher searcher, int clipNumFrames, int numCandidates){
+
+		// bounds are packed with the track index so they are sorted together
+		int[] trackIds=new int[hitTable.size()];
+		long[] packedBounds=new long[trackIds.length];
+		int numTracks=0;
+		for (int slot=0; slot<hitTable.getCapacity(); slot++){
+			if (!hitTable.isUsed(slot)){
+				continue;
+			}
+			int trackId=(int)hitTable.getKey(slot);
+			int numHits=hitTable.getCount(slot);
+			int numFrames=Math.min(clipNumFrames, searcher.getNumFrames(trackId));
+			float scoreBound=numFrames>0?(float)numHits/numFrames:numHits;
+			trackIds[numTracks]=trackId;
+			// a non-negative float sorts as its bits
+			packedBounds[numTracks]=(long)Float.floatToIntBits(scoreBound)<<32 | numTracks;
+			numTracks++;
+		}
+		Arrays.sort(packedBounds);
+
+		candidateTrackIds=new int[Math.min(numCandidates, numTracks)];
+		for (int i=0; i<candidateTrackIds.length; i++){
+			candidateTrackIds[i]=trackIds[(int)packedBounds[numTracks-1-i]];
+		}
+		Arrays.sort(candidateTrackIds);
+	}
+
+	/**
+	 * Get the best matched tracks, ranked by score
+	 *
+	 * @param searcher	searcher which provides the number of frames of the tracks
+	 * @param clipNumFrames	number of frames of the clip
+	 * @param topK	maximum number of results
+	 * @return match results, the highest score first
+	 */
+	public List<MatchResult> getMatchResults(FingerprintSearcher searcher, int clipNumFrames, int topK){
+		List<MatchResult> matchResults=new ArrayList<MatchResult>();
+		rankOffsets();
+		for (int i=0; i<numRankedTracks; i++){
+			int trackId=rankedTrackIds[i];
+			int numFrames=Math.min(clipNumFrames, searcher.getNumFrames(trackId));
+			matchResults.add(new MatchResult(trackId, hitTable.get(trackId), getSimilarity(i, numFrames)));
+		}
+
+		Collections.sort(matchResults, new Comparator<MatchResult>(){
+			public int compare(MatchResult result1, MatchResult result2){
+				if (result1.getScore()!=result2.getScore()){
+					return result1.getScore()>result2.getScore()?-1:1;
+				}
+				return result1.getTrackId()<result2.getTrackId()?-1:(result1.getTrackId()==result2.getTrackId()?0:1);
+			}
+		});
+
+		if (matchResults.size()>topK){
+			return new ArrayList<MatchResult>(matchResults.subList(0, topK));
+		}
+		return matchResults;
+	}
+
+	/**
+	 * Get the similarity of every counted track
+	 *
+	 * @param searcher	searcher which provides the number of frames of the tracks
+	 * @param clipNumFrames	number of frames of the clip
+	 * @return track_Similarity_Table<trackId,similarity>
+	 */
+	public HashMap<Integer,FingerprintSimilarity> getSimilarities(FingerprintSearcher searcher, int clipNumFrames){
+		HashMap<Integer,FingerprintSimilarity> track_Similarity_Table=new HashMap<Integer,FingerprintSimilarity>();
+		rankOffsets();
+		for (int i=0; i<numRankedTracks; i++){
+			int trackId=rankedTrackIds[i];
+			int numFrames=Math.min(clipNumFrames, searcher.getNumFrames(trackId));
+			track_Similarity_Table.put(trackId, getSimilarity(i, numFrames));
+		}
+		return track_Similarity_Table;
+	}
+
+	// the best offset plus its neighbour score, per frame of the shorter fingerprint
+	private FingerprintSimilarity getSimilarity(int rankedTrackIndex, int numFrames){
+		FingerprintSimilarity fingerprintSimilarity=new FingerprintSimilarity();
+		FingerprintSimilarityComputer.setSimilarity(fingerprintSimilarity, bestOffsets[rankedTrackIndex], bestCounts[rankedTrackIndex], bestNeighbourScores[rankedTrackIndex], numFrames);
+		return fingerprintSimilarity;
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.benchmark;
+
+/**
+ * An operation of the pipeline benchmarks, measured by PipelineJmhBenchmark
+ * The input should be prepared in the constructor, so run() does the measured work only
+ */
+public abstract class BenchmarkCase {
+
+	private String name;
+
+	/**
+	 * Constructor
+	 *
+	 * @param name	name of the case, e.g. stage/parameters, used as the parameter of the JMH benchmark
+	 */
+	public BenchmarkCase(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Run the operation once
+	 *
+	 * @return result of the operation, consumed by the benchmark so the work cannot be optimized away
+	 */
+	public abstract Object run();
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+/**
+ * Measure the wall time, allocated bytes and GC activity of the current thread between start() and report()
+ */
+public class BenchmarkMeter {
+
+	private long allocated;
+	private long gcCount;
+	private long gcTime;
+	private long time;
+
+	/**
+	 * Start measuring
+	 */
+	public void start() {
+		long[] snapshot = snapshot();
+		allocated = snapshot[0];
+		gcCount = snapshot[1];
+		gcTime = snapshot[2];
+		time = snapshot[3];
+	}
+
+	/**
+	 * Print the measurement since start() per operation
+	 *
+	 * @param name	name of the operation
+	 * @param rounds	number of operations since start()
+	 * @return nanoseconds per operation
+	 */
+	public long report(String name, int rounds) {
+		long[] snapshot = snapshot();
+		long nanosPerOp = (snapshot[3] - time) / rounds;
+		System.out.println(name + ": "
+				+ (snapshot[0] - allocated) / rounds / 1024 + " KB allocated/op, "
+				+ nanosPerOp / 1000 + " us/op, "
+				+ (snapshot[1] - gcCount) + " GCs (" + (snapshot[2] - gcTime) + " ms) in " + rounds + " ops");
+		return nanosPerOp;
+	}
+
+	// allocated bytes, gc count, gc time, wall time
+	private static long[] snapshot() {
+		long gcCount = 0;
+		long gcTime = 0;
+		Iterator<GarbageCollectorMXBean> gcIterator = ManagementFactory.getGarbageCollectorMXBeans().iterator();
+		while (gcIterator.hasNext()) {
+			GarbageCollectorMXBean gc = gcIterator.next();
+			gcCount += gc.getCollectionCount();
+			gcTime += gc.getCollectionTime();
+		}
+		long allocated = ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return new long[] { allocated, gcCount, gcTime, System.nanoTime() };
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.benchmark;
+
+import java.io.File;
+import java.util.Arrays;
+
+import com.musicg.fingerprint.CompactFingerprintReader;
+import com.musicg.fingerprint.CompactFingerprintWriter;
+import com.musicg.wave.Wave;
+
+/**
+ * Size and frame modes of the compact fingerprints of the bundled songs
+ * The frames of the robust points, one per filter bank, are expected to be written with a bank mask (mode 0), a song without is reported
+ * The lossless format is checked to read back the same fingerprint bytes
+ */
+public class CompactFingerprintBenchmark {
+
+	public static void main(String[] args) {
+
+		String songDirectory = "audio_work/songs";
+
+		String[] filenames = new File(songDirectory).list();
+		Arrays.sort(filenames);
+
+		CompactFingerprintWriter writer = new CompactFingerprintWriter();
+		CompactFingerprintWriter losslessWriter = new CompactFingerprintWriter(CompactFingerprintWriter.MAX_INTENSITY_BITS);
+		CompactFingerprintReader reader = new CompactFingerprintReader();
+
+		for (int f = 0; f < filenames.length; f++) {
+			if (!filenames[f].endsWith(".wav")) {
+				continue;
+			}
+			byte[] fingerprint = new Wave(songDirectory + "/" + filenames[f]).getFingerprint();
+
+			byte[] compactFingerprint = writer.write(fingerprint);
+			int numBankMaskFrames = writer.getNumBankMaskFrames();
+			int numFrames = numBankMaskFrames + writer.getNumYDeltaFrames();
+			byte[] losslessFingerprint = losslessWriter.write(fingerprint);
+
+			System.out.println(filenames[f] + ": " + fingerprint.length + " bytes, compact " + compactFingerprint.length + " bytes, lossless "
+					+ losslessFingerprint.length + " bytes, bank mask frames " + numBankMaskFrames + "/" + numFrames + ", lossless round trip: "
+					+ Arrays.equals(fingerprint, reader.readBytes(losslessFingerprint)));
+			if (numFrames > 0 && numBankMaskFrames == 0) {
+				System.err.println("CompactFingerprintBenchmark: no frame of " + filenames[f] + " is written with a bank mask");
+			}
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.musicg.dsp.PolyphaseResampler;
+import com.musicg.fingerprint.FingerprintManager;
+import com.musicg.wave.Wave;
+
+/**
+ * Stress check of extracting fingerprints from a shared in-memory catalog in many threads at the same time
+ * The threads share the waves and the managers, every fingerprint must be the same as the serial one and no wave may be changed
+ *
+ * Usage: ConcurrentExtractionBenchmark [numThreads] [roundsPerThread]
+ * Exits with 1 if a fingerprint or a wave differs
+ */
+public class ConcurrentExtractionBenchmark {
+
+	private static final String SONG_DIRECTORY = "audio_work/songs";
+
+	public static void main(String[] args) {
+
+		int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int roundsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		// the shared catalog
+		String[] filenames = new File(SONG_DIRECTORY).list();
+		Arrays.sort(filenames);
+		final List<Wave> waves = new ArrayList<Wave>();
+		for (int i = 0; i < filenames.length; i++) {
+			if (filenames[i].endsWith(".wav")) {
+				waves.add(new Wave(SONG_DIRECTORY + "/" + filenames[i]));
+			}
+		}
+
+		// the shared managers, one per extraction path
+		ExecutorService spectrogramExecutor = Executors.newFixedThreadPool(2);
+		FingerprintManager floatManager = new FingerprintManager();
+		floatManager.setFloatSpectrogram(true);
+		FingerprintManager polyphaseManager = new FingerprintManager();
+		polyphaseManager.setResamplerQuality(PolyphaseResampler.QUALITY_FAST);
+		final FingerprintManager[] managers = { new FingerprintManager(), new FingerprintManager(spectrogramExecutor), floatManager, polyphaseManager };
+		final String[] managerNames = { "serial", "parallel fft", "float", "polyphase" };
+
+		// the waves before the threads
+		String[] headers = new String[waves.size()];
+		int[] dataHashes = new int[waves.size()];
+		for (int w = 0; w < waves.size(); w++) {
+			headers[w] = waves.get(w).getWaveHeader().toString();
+			dataHashes[w] = Arrays.hashCode(waves.get(w).getBytes());
+		}
+
+		// serial fingerprints, the second pass is measured
+		final byte[][][] fingerprints = new byte[managers.length][waves.size()][];
+		BenchmarkMeter meter = new BenchmarkMeter();
+		for (int pass = 0; pass < 2; pass++) {
+			meter.start();
+			for (int w = 0; w < waves.size(); w++) {
+				for (int m = 0; m < managers.length; m++) {
+					fingerprints[m][w] = managers[m].extractFingerprint(waves.get(w));
+				}
+			}
+		}
+		long serialNanos = meter.report("serial, " + waves.size() + " waves x " + managers.length + " managers", waves.size() * managers.length);
+
+		// every thread extracts the catalog in its own order, starting at the same time
+		final AtomicInteger numMismatches = new AtomicInteger();
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		final int rounds = roundsPerThread;
+		ExecutorService threads = Executors.newFixedThreadPool(numThreads);
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int t = 0; t < numThreads; t++) {
+			final int thread = t;
+			tasks.add(new Callable<Integer>() {
+				public Integer call() throws InterruptedException {
+					startSignal.await();
+					int numExtractions = 0;
+					for (int r = 0; r < rounds; r++) {
+						int w = (thread + r) % waves.size();
+						int m = (thread + r / waves.size()) % managers.length;
+						byte[] fingerprint = managers[m].extractFingerprint(waves.get(w));
+						if (!Arrays.equals(fingerprint, fingerprints[m][w])) {
+							System.err.println("thread " + thread + ": fingerprint of wave " + w + " by the " + managerNames[m] + " manager differs");
+							numMismatches.incrementAndGet();
+						}
+						numExtractions++;
+					}
+					return numExtractions;
+				}
+			});
+		}
+
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		Iterator<Callable<Integer>> taskIterator = tasks.iterator();
+		while (taskIterator.hasNext()) {
+			futures.add(threads.submit(taskIterator.next()));
+		}
+		long time = System.nanoTime();
+		startSignal.countDown();
+		int numExtractions = 0;
+		try {
+			Iterator<Future<Integer>> futureIterator = futures.iterator();
+			while (futureIterator.hasNext()) {
+				numExtractions += futureIterator.next().get();
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+			numMismatches.incrementAndGet();
+		}
+		long concurrentNanos = (System.nanoTime() - time) / Math.max(numExtractions, 1);
+		threads.shutdown();
+		spectrogramExecutor.shutdown();
+		System.out.println(numThreads + " threads: " + numExtractions + " extractions, " + concurrentNanos / 1000 + " us/op, "
+				+ String.format("%.2f", (double) serialNanos / Math.max(concurrentNanos, 1)) + "x the serial throughput on " + Runtime.getRuntime().availableProcessors() + " cores");
+
+		// the catalog must be untouched
+		int numChangedWaves = 0;
+		for (int w = 0; w < waves.size(); w++) {
+			if (!headers[w].equals(waves.get(w).getWaveHeader().toString()) || dataHashes[w] != Arrays.hashCode(waves.get(w).getBytes())) {
+				System.err.println("wave " + w + " was changed by the extraction");
+				numChangedWaves++;
+			}
+		}
+
+		System.out.println(numMismatches.get() + " different fingerprints, " + numChangedWaves + " changed waves");
+		if (numMismatches.get() > 0 || numChangedWaves > 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.musicg.fingerprint.FingerprintSimilarity;
+import com.musicg.fingerprint.FingerprintSimilarityComputer;
+import com.musicg.wave.Wave;
+
+/**
+ * Latency and skipped matches of the progressive similarity computation against the full one
+ * Each clip, a noisy excerpt of a StopPairListBenchmark track or the recorded clip, is compared with its track and with another track
+ * A match is decided by the similarity threshold, the progressive decisions and offsets of the matched clips are checked against the full computation
+ *
+ * Usage: EarlyTerminationBenchmark [numSyntheticTracks] [numClips] [minSimilarity] [confidenceRatio]
+ */
+public class EarlyTerminationBenchmark {
+
+	public static void main(String[] args) {
+
+		int numSyntheticTracks = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int numClips = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		float minSimilarity = args.length > 2 ? Float.parseFloat(args[2]) : 0.2f;
+		float confidenceRatio = args.length > 3 ? Float.parseFloat(args[3]) : 2;
+		Random random = new Random(1);
+
+		// the tracks
+		List<byte[]> trackFingerprints = new ArrayList<byte[]>();
+		List<Wave> tracks = new ArrayList<Wave>();
+		for (int i = 0; i < StopPairListBenchmark.SONGS.length; i++) {
+			tracks.add(new Wave(StopPairListBenchmark.SONGS[i]));
+		}
+		for (int i = 0; i < numSyntheticTracks; i++) {
+			tracks.add(StopPairListBenchmark.getSyntheticTrack(random, StopPairListBenchmark.TRACK_SECONDS));
+		}
+		for (int i = 0; i < tracks.size(); i++) {
+			trackFingerprints.add(tracks.get(i).getFingerprint());
+		}
+
+		// the clips, each with its track and another track
+		List<byte[]> clipFingerprints = new ArrayList<byte[]>();
+		List<Integer> clipTracks = new ArrayList<Integer>();
+		clipFingerprints.add(new Wave(StopPairListBenchmark.RECORDED_CLIP).getFingerprint());
+		clipTracks.add(StopPairListBenchmark.RECORDED_CLIP_TRACK);
+		for (int i = 1; i < numClips; i++) {
+			int trackId = random.nextInt(tracks.size());
+			clipFingerprints.add(StopPairListBenchmark.getNoisyExcerpt(random, tracks.get(trackId), StopPairListBenchmark.CLIP_SECONDS).getFingerprint());
+			clipTracks.add(trackId);
+		}
+		List<Integer> otherTracks = new ArrayList<Integer>();
+		for (int c = 0; c < clipFingerprints.size(); c++) {
+			otherTracks.add((clipTracks.get(c) + 1 + random.nextInt(tracks.size() - 1)) % tracks.size());
+		}
+
+		// warm up
+		for (int c = 0; c < clipFingerprints.size(); c++) {
+			getComputer(trackFingerprints.get(clipTracks.get(c)), clipFingerprints.get(c), false, minSimilarity, confidenceRatio).getFingerprintsSimilarity();
+			getComputer(trackFingerprints.get(clipTracks.get(c)), clipFingerprints.get(c), true, minSimilarity, confidenceRatio).getFingerprintsSimilarity();
+		}
+
+		run("clip to its track", trackFingerprints, clipFingerprints, clipTracks, minSimilarity, confidenceRatio);
+		run("clip to another track", trackFingerprints, clipFingerprints, otherTracks, minSimilarity, confidenceRatio);
+	}
+
+	private static void run(String name, List<byte[]> trackFingerprints, List<byte[]> clipFingerprints, List<Integer> comparedTracks,
+			float minSimilarity, float confidenceRatio) {
+
+		int numClips = clipFingerprints.size();
+		long[] fullNanos = new long[numClips];
+		long[] progressiveNanos = new long[numClips];
+		long numMatches = 0;
+		long numSkippedMatches = 0;
+		int numTerminated = 0;
+		int numFullMatched = 0;
+		int numSameDecisions = 0;
+		int numSameOffsets = 0;
+		int numNearOffsets = 0;	// within one frame, a neighbour offset shares the matches of the leading one
+
+		for (int c = 0; c < numClips; c++) {
+			byte[] trackFingerprint = trackFingerprints.get(comparedTracks.get(c));
+
+			FingerprintSimilarityComputer fullComputer = getComputer(trackFingerprint, clipFingerprints.get(c), false, minSimilarity, confidenceRatio);
+			long time = System.nanoTime();
+			FingerprintSimilarity fullSimilarity = fullComputer.getFingerprintsSimilarity();
+			fullNanos[c] = System.nanoTime() - time;
+
+			FingerprintSimilarityComputer progressiveComputer = getComputer(trackFingerprint, clipFingerprints.get(c), true, minSimilarity, confidenceRatio);
+			time = System.nanoTime();
+			FingerprintSimilarity progressiveSimilarity = progressiveComputer.getFingerprintsSimilarity();
+			progressiveNanos[c] = System.nanoTime() - time;
+
+			numMatches += progressiveComputer.getNumMatches();
+			numSkippedMatches += progressiveComputer.getNumSkippedMatches();
+			if (progressiveComputer.isTerminatedEarly()) {
+				numTerminated++;
+			}
+
+			boolean isFullMatched = fullSimilarity.getSimilarity() >= minSimilarity;
+			if (isFullMatched) {
+				numFullMatched++;
+				int offsetDifference = Math.abs(progressiveSimilarity.getMostSimilarFramePosition() - fullSimilarity.getMostSimilarFramePosition());
+				if (offsetDifference == 0) {
+					numSameOffsets++;
+				}
+				if (offsetDifference <= 1) {
+					numNearOffsets++;
+				}
+			}
+			if (isFullMatched == (progressiveSimilarity.getSimilarity() >= minSimilarity)) {
+				numSameDecisions++;
+			}
+		}
+
+		System.out.println(name + ": median " + getMedian(fullNanos) / 1000 + " us full, " + getMedian(progressiveNanos) / 1000
+				+ " us progressive, " + numTerminated + "/" + numClips + " terminated early, "
+				+ (numMatches == 0 ? 0 : 100 * numSkippedMatches / numMatches) + "% of " + numMatches + " matches skipped, same decision "
+				+ numSameDecisions + "/" + numClips + ", same offset " + numSameOffsets + "/" + numFullMatched + " matched, within one frame "
+				+ numNearOffsets + "/" + numFullMatched);
+	}
+
+	private static FingerprintSimilarityComputer getComputer(byte[] trackFingerprint, byte[] clipFingerprint, boolean isProgressive,
+			float minSimilarity, float confidenceRatio) {
+		FingerprintSimilarityComputer fingerprintSimilarityComputer = new FingerprintSimilarityComputer(trackFingerprint, clipFingerprint);
+		if (isProgressive) {
+			fingerprintSimilarityComputer.setEarlyTermination(minSimilarity, confidenceRatio);
+		}
+		return fingerprintSimilarityComputer;
+	}
+
+	private static long getMedian(long[] values) {
+		long[] sortedValues = Arrays.copyOf(values, values.length);
+		Arrays.sort(sortedValues);
+		return sortedValues[sortedValues.length / 2];
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.benchmark;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.musicg.dsp.Resampler;
+import com.musicg.fingerprint.FingerprintManager;
+import com.musicg.processor.TopManyPointsProcessorChain;
+import com.musicg.properties.FingerprintProperties;
+import com.musicg.wave.Wave;
+import com.musicg.wave.WaveHeader;
+
+/**
+ * Compare the point selection and encoding of FingerprintManager with the former LinkedList based encoding on the bundled songs
+ * The spectrograms are computed once, so only the steps after the spectrogram are measured
+ */
+public class FingerprintExtractionBenchmark {
+
+	private static FingerprintProperties fingerprintProperties = FingerprintProperties.getInstance();
+
+	public static void main(String[] args) {
+
+		String songDirectory = "audio_work/songs";
+		int rounds = 20;
+
+		String[] filenames = new File(songDirectory).list();
+		Arrays.sort(filenames);
+
+		FingerprintManager fingerprintManager = new FingerprintManager();
+		BenchmarkMeter meter = new BenchmarkMeter();
+
+		for (int f = 0; f < filenames.length; f++) {
+			if (!filenames[f].endsWith(".wav")) {
+				continue;
+			}
+			double[][] spectrogramData = getSpectrogramData(new Wave(songDirectory + "/" + filenames[f]));
+
+			byte[] linkedListFingerprint = extractLinkedListFingerprint(spectrogramData);
+			byte[] fingerprint = fingerprintManager.extractFingerprint(spectrogramData);
+			System.out.println(filenames[f] + ": " + spectrogramData.length + " frames, " + fingerprint.length + " bytes, same fingerprint: " + Arrays.equals(linkedListFingerprint, fingerprint));
+
+			// warm up
+			for (int i = 0; i < rounds; i++) {
+				sink += extractLinkedListFingerprint(spectrogramData).length;
+				sink += fingerprintManager.extractFingerprint(spectrogramData).length;
+			}
+
+			meter.start();
+			for (int i = 0; i < rounds; i++) {
+				sink += extractLinkedListFingerprint(spectrogramData).length;
+			}
+			meter.report("  LinkedList<Byte>", rounds);
+
+			meter.start();
+			for (int i = 0; i < rounds; i++) {
+				sink += fingerprintManager.extractFingerprint(spectrogramData).length;
+			}
+			meter.report("  ByteBuffer", rounds);
+		}
+	}
+
+	private static long sink;
+
+	// same as FingerprintManager.getResampledWave
+	private static double[][] getSpectrogramData(Wave wave) {
+		WaveHeader waveHeader = new WaveHeader(wave.getWaveHeader());
+		int targetRate = fingerprintProperties.getSampleRate();
+		byte[] resampledWaveData = new Resampler().reSample(wave.getBytes(), waveHeader.getBitsPerSample(), waveHeader.getSampleRate(), targetRate);
+		waveHeader.setSampleRate(targetRate);
+		Wave resampledWave = new Wave(waveHeader, resampledWaveData);
+		return resampledWave.getSpectrogram(fingerprintProperties.getSampleSizePerFrame(), fingerprintProperties.getOverlapFactor()).getNormalizedSpectrogramData();
+	}
+
+	// the former extraction after the spectrogram, points are collected in linked lists and the bytes appended one by one
+	private static byte[] extractLinkedListFingerprint(double[][] spectorgramData) {
+
+		int numRobustPointsPerFrame = fingerprintProperties.getNumRobustPointsPerFrame();
+		List<Integer>[] pointsLists = getRobustPointList(spectorgramData);
+		int numFrames = pointsLists.length;
+
+		int[][] coordinates = new int[numFrames][numRobustPointsPerFrame];
+		for (int x = 0; x < numFrames; x++) {
+			if (pointsLists[x].size() == numRobustPointsPerFrame) {
+				Iterator<Integer> pointsListsIterator = pointsLists[x].iterator();
+				for (int y = 0; y < numRobustPointsPerFrame; y++) {
+					coordinates[x][y] = pointsListsIterator.next();
+				}
+			} else {
+				for (int y = 0; y < numRobustPointsPerFrame; y++) {
+					coordinates[x][y] = -1;
+				}
+			}
+		}
+
+		List<Byte> byteList = new LinkedList<Byte>();
+		for (int i = 0; i < numFrames; i++) {
+			for (int j = 0; j < numRobustPointsPerFrame; j++) {
+				if (coordinates[i][j] != -1) {
+					int x = i;
+					byteList.add((byte) (x >> 8));
+					byteList.add((byte) x);
+					int y = coordinates[i][j];
+					byteList.add((byte) (y >> 8));
+					byteList.add((byte) y);
+					int intensity = (int) (spectorgramData[x][y] * Integer.MAX_VALUE);
+					byteList.add((byte) (intensity >> 24));
+					byteList.add((byte) (intensity >> 16));
+					byteList.add((byte) (intensity >> 8));
+					byteList.add((byte) intensity);
+				}
+			}
+		}
+
+		byte[] fingerprint = new byte[byteList.size()];
+		Iterator<Byte> byteListIterator = byteList.iterator();
+		int pointer = 0;
+		while (byteListIterator.hasNext()) {
+			fingerprint[pointer++] = byteListIterator.next();
+		}
+		return fingerprint;
+	}
+
+	private static List<Integer>[] getRobustPointList(double[][] spectrogramData) {
+
+		int numFilterBanks = fingerprintProperties.getNumFilterBanks();
+		int numX = spectrogramData.length;
+		int numY = spectrogramData[0].length;
+
+		double[][] allBanksIntensities = new double[numX][numY];
+		int bandwidthPerBank = numY / numFilterBanks;
+
+		for (int b = 0; b < numFilterBanks; b++) {
+			double[][] bankIntensities = new double[numX][bandwidthPerBank];
+			for (int i = 0; i < numX; i++) {
+				for (int j = 0; j < bandwidthPerBank; j++) {
+					bankIntensities[i][j] = spectrogramData[i][j + b * bandwidthPerBank];
+				}
+			}
+			TopManyPointsProcessorChain processorChain = new TopManyPointsProcessorChain(bankIntensities, 1);
+			double[][] processedIntensities = processorChain.getIntensities();
+			for (int i = 0; i < numX; i++) {
+				for (int j = 0; j < bandwidthPerBank; j++) {
+					allBanksIntensities[i][j + b * bandwidthPerBank] = processedIntensities[i][j];
+				}
+			}
+		}
+
+		List<int[]> robustPointList = new LinkedList<int[]>();
+		for (int i = 0; i < allBanksIntensities.length; i++) {
+			for (int j = 0; j < allBanksIntensities[i].length; j++) {
+				if (allBanksIntensities[i][j] > 0) {
+					robustPointList.add(new int[] { i, j });
+				}
+			}
+		}
+
+		List<Integer>[] robustLists = new LinkedList[spectrogramData.length];
+		for (int i = 0; i < robustLists.length; i++) {
+			robustLists[i] = new LinkedList<Integer>();
+		}
+		Iterator<int[]> robustPointListIterator = robustPointList.iterator();
+		while (robustPointListIterator.hasNext()) {
+			int[] coor = robustPointListIterator.next();
+			robustLists[coor[0]].add(coor[1]);
+		}
+		return robustLists;
+	}
+}
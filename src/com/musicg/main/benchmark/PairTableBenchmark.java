@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.benchmark;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import com.musicg.fingerprint.PairManager;
+import com.musicg.fingerprint.PairTable;
+import com.musicg.wave.Wave;
+import com.musicg.wave.WaveHeader;
+
+/**
+ * Compare the allocation and GC pressure of the boxed pair-positionList table and the primitive pair table
+ * A full-length song is made by looping a bundled song
+ * Then the pairing time per point is measured on the first 1/8 to all of the song, it stays flat as the pairing is linear in the song length
+ */
+public class PairTableBenchmark {
+
+	public static void main(String[] args) {
+
+		String filename = "audio_work/songs/top_of_the_world.wav";
+		int targetSeconds = 240;
+		int rounds = 10;
+
+		byte[] fingerprint = loopWave(new Wave(filename), targetSeconds).getFingerprint();
+		System.out.println("fingerprint of " + targetSeconds + "s: " + fingerprint.length + " bytes");
+
+		PairManager pairManager = new PairManager();
+
+		// warm up
+		for (int i = 0; i < rounds; i++) {
+			consume(pairManager.getPair_PositionList_Table(fingerprint));
+			consume(pairManager.getPairTable(fingerprint));
+		}
+
+		BenchmarkMeter meter = new BenchmarkMeter();
+		meter.start();
+		for (int i = 0; i < rounds; i++) {
+			consume(pairManager.getPair_PositionList_Table(fingerprint));
+		}
+		meter.report("HashMap<Integer,List<Integer>>", rounds);
+
+		meter.start();
+		for (int i = 0; i < rounds; i++) {
+			consume(pairManager.getPairTable(fingerprint));
+		}
+		meter.report("PairTable", rounds);
+
+		// scaling with the song length, the fingerprint points are in frame order so the first bytes are a shorter song
+		int numPoints = fingerprint.length / 8;
+		for (int parts = 8; parts >= 1; parts /= 2) {
+			int numPartPoints = numPoints / parts;
+			byte[] partFingerprint = new byte[numPartPoints * 8];
+			System.arraycopy(fingerprint, 0, partFingerprint, 0, partFingerprint.length);
+			int partRounds = rounds * parts;
+			for (int i = 0; i < partRounds; i++) {
+				consume(pairManager.getPairTable(partFingerprint));
+			}
+			meter.start();
+			for (int i = 0; i < partRounds; i++) {
+				consume(pairManager.getPairTable(partFingerprint));
+			}
+			long nanosPerOp = meter.report("PairTable of " + targetSeconds / parts + "s", partRounds);
+			System.out.println("  " + numPartPoints + " points, " + nanosPerOp / numPartPoints + " ns/point");
+		}
+	}
+
+	/**
+	 * Make a longer wave by repeating the data of a wave
+	 *
+	 * @param wave	source wave
+	 * @param targetSeconds	length of the looped wave
+	 * @return looped wave
+	 */
+	public static Wave loopWave(Wave wave, int targetSeconds) {
+		WaveHeader sourceHeader = wave.getWaveHeader();
+		byte[] data = wave.getBytes();
+		int length = sourceHeader.getByteRate() * targetSeconds;
+		length -= length % sourceHeader.getBlockAlign();
+
+		byte[] loopedData = new byte[length];
+		for (int pointer = 0; pointer < length; pointer += data.length) {
+			System.arraycopy(data, 0, loopedData, pointer, Math.min(data.length, length - pointer));
+		}
+
+		WaveHeader waveHeader = new WaveHeader();
+		waveHeader.setSampleRate(sourceHeader.getSampleRate());
+		waveHeader.setChannels(sourceHeader.getChannels());
+		waveHeader.setBitsPerSample(sourceHeader.getBitsPerSample());
+		waveHeader.setBlockAlign(sourceHeader.getBlockAlign());
+		waveHeader.setByteRate(sourceHeader.getByteRate());
+		waveHeader.setSubChunk2Size(length);
+		waveHeader.setChunkSize(length + 36);
+		return new Wave(waveHeader, loopedData);
+	}
+
+	private static long sink;
+
+	private static void consume(HashMap<Integer, List<Integer>> table) {
+		Iterator<List<Integer>> iterator = table.values().iterator();
+		while (iterator.hasNext()) {
+			sink += iterator.next().size();
+		}
+	}
+
+	private static void consume(PairTable table) {
+		sink += table.size();
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import com.musicg.api.WhistleApi;
+import com.musicg.dsp.FastFourierTransform;
+import com.musicg.dsp.PolyphaseResampler;
+import com.musicg.dsp.Resampler;
+import com.musicg.dsp.SpectrumKernels;
+import com.musicg.dsp.WindowFunction;
+import com.musicg.fingerprint.FingerprintManager;
+import com.musicg.fingerprint.FingerprintSimilarityComputer;
+import com.musicg.fingerprint.PairManager;
+import com.musicg.properties.FingerprintProperties;
+import com.musicg.wave.Wave;
+import com.musicg.wave.WaveHeader;
+import com.musicg.wave.extension.FloatSpectrogram;
+import com.musicg.wave.extension.Spectrogram;
+
+/**
+ * Benchmark cases of the analysis pipeline on the waves under audio_work and on synthetic signals
+ * The cases are measured by the JMH benchmark PipelineJmhBenchmark (mvn -P jmh package, then java -jar target/benchmarks.jar)
+ *
+ * Usage: PipelineBenchmark [filter]
+ * Runs every case once, e.g. to check the cases after a change without building the benchmarks
+ * filter	run the cases whose name contains the filter only
+ */
+public class PipelineBenchmark {
+
+	private static final String SONG = "audio_work/songs/top_of_the_world.wav";
+	private static final String CLIP = "audio_work/songs/top_of_the_world_rec.wav";
+	private static final String WHISTLE = "audio_work/whistle.wav";
+
+	public static void main(String[] args) {
+
+		String filter = args.length > 0 ? args[0] : "";
+		Iterator<BenchmarkCase> caseIterator = getCases().iterator();
+		while (caseIterator.hasNext()) {
+			BenchmarkCase benchmarkCase = caseIterator.next();
+			if (benchmarkCase.getName().indexOf(filter) < 0) {
+				continue;
+			}
+			benchmarkCase.run();
+			System.out.println(benchmarkCase.getName());
+		}
+	}
+
+	/**
+	 * Get the benchmark cases, the inputs of every case are prepared here
+	 * Run from the project folder, the cases read the waves under audio_work
+	 *
+	 * @return cases in the order of the pipeline
+	 */
+	public static List<BenchmarkCase> getCases() {
+
+		List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+		FingerprintProperties fingerprintProperties = FingerprintProperties.getInstance();
+
+		final Wave song = new Wave(SONG);
+		final Wave synthetic = getSyntheticWave(30, 44100);
+		final byte[] songFile = readFile(SONG);
+
+		// wave parsing
+		cases.add(new BenchmarkCase("wave/parse/song") {
+			public Object run() {
+				return new Wave(new ByteArrayInputStream(songFile));
+			}
+		});
+		cases.add(new BenchmarkCase("wave/getSampleAmplitudes/song") {
+			public Object run() {
+				return copyWave(song, song.getBytes()).getSampleAmplitudes();
+			}
+		});
+
+		// resampling
+		final int targetRate = fingerprintProperties.getSampleRate();
+		cases.add(new BenchmarkCase("resample/song") {
+			public Object run() {
+				return new Resampler().reSample(song.getBytes(), song.getWaveHeader().getBitsPerSample(), song.getWaveHeader().getSampleRate(), targetRate);
+			}
+		});
+		cases.add(new BenchmarkCase("resample/synthetic") {
+			public Object run() {
+				return new Resampler().reSample(synthetic.getBytes(), synthetic.getWaveHeader().getBitsPerSample(), synthetic.getWaveHeader().getSampleRate(), targetRate);
+			}
+		});
+		String[] qualityNames = { "linear", "fast", "medium", "high" };
+		for (int quality = PolyphaseResampler.QUALITY_FAST; quality <= PolyphaseResampler.QUALITY_HIGH; quality++) {
+			final Resampler resampler = new Resampler(quality);
+			cases.add(new BenchmarkCase("resample/polyphase-" + qualityNames[quality] + "/song") {
+				public Object run() {
+					return resampler.reSample(song.getBytes(), song.getWaveHeader().getBitsPerSample(), song.getWaveHeader().getSampleRate(), targetRate);
+				}
+			});
+		}
+
+		// spectrogram at several fft sizes and overlaps, on the song resampled as in fingerprinting
+		byte[] resampledSong = new Resampler().reSample(song.getBytes(), song.getWaveHeader().getBitsPerSample(), song.getWaveHeader().getSampleRate(), targetRate);
+		final Wave resampledWave = copyWave(song, resampledSong);
+		resampledWave.getWaveHeader().setSampleRate(targetRate);
+		int[][] spectrogramSettings = { { 1024, 0 }, { 2048, 4 }, { 4096, 2 } };
+		for (int i = 0; i < spectrogramSettings.length; i++) {
+			final int fftSampleSize = spectrogramSettings[i][0];
+			final int overlapFactor = spectrogramSettings[i][1];
+			cases.add(new BenchmarkCase("spectrogram/" + fftSampleSize + "x" + overlapFactor) {
+				public Object run() {
+					return new Spectrogram(resampledWave, fftSampleSize, overlapFactor).getNormalizedSpectrogramData();
+				}
+			});
+			cases.add(new BenchmarkCase("spectrogram/absolute/" + fftSampleSize + "x" + overlapFactor) {
+				public Object run() {
+					return new Spectrogram(resampledWave, fftSampleSize, overlapFactor).getAbsoluteSpectrogramData();
+				}
+			});
+			cases.add(new BenchmarkCase("spectrogram/release/" + fftSampleSize + "x" + overlapFactor) {
+				public Object run() {
+					Spectrogram spectrogram = new Spectrogram(resampledWave, fftSampleSize, overlapFactor);
+					spectrogram.setReleaseAbsoluteSpectrogram(true);
+					return spectrogram.getNormalizedSpectrogramData();
+				}
+			});
+			cases.add(new BenchmarkCase("spectrogram/float/" + fftSampleSize + "x" + overlapFactor) {
+				public Object run() {
+					return new FloatSpectrogram(resampledWave, fftSampleSize, overlapFactor);
+				}
+			});
+		}
+
+		// resampling and spectrogram of fingerprinting, through a resampled wave or from the song bytes directly
+		final int fingerprintFftSampleSize = fingerprintProperties.getSampleSizePerFrame();
+		final int fingerprintOverlapFactor = fingerprintProperties.getOverlapFactor();
+		cases.add(new BenchmarkCase("spectrogram/resample-wave/song") {
+			public Object run() {
+				byte[] resampledData = new Resampler().reSample(song.getBytes(), song.getWaveHeader().getBitsPerSample(), song.getWaveHeader().getSampleRate(), targetRate);
+				Wave wave = copyWave(song, resampledData);
+				wave.getWaveHeader().setSampleRate(targetRate);
+				Spectrogram spectrogram = new Spectrogram(wave, fingerprintFftSampleSize, fingerprintOverlapFactor);
+				spectrogram.setReleaseAbsoluteSpectrogram(true);
+				return spectrogram.getNormalizedSpectrogramData();
+			}
+		});
+		cases.add(new BenchmarkCase("spectrogram/resample-bytes/song") {
+			public Object run() {
+				Spectrogram spectrogram = new Spectrogram(song, targetRate, Resampler.QUALITY_LINEAR, fingerprintFftSampleSize, fingerprintOverlapFactor);
+				spectrogram.setReleaseAbsoluteSpectrogram(true);
+				return spectrogram.getNormalizedSpectrogramData();
+			}
+		});
+
+		// single ffts on a synthetic frame, the input is copied as the transform is in place
+		int[] fftSizes = { 512, 2048, 8192 };
+		for (int i = 0; i < fftSizes.length; i++) {
+			final double[] signal = getSyntheticSignal(fftSizes[i], 44100);
+			final FastFourierTransform fft = new FastFourierTransform();
+			cases.add(new BenchmarkCase("fft/getMagnitudes/" + fftSizes[i]) {
+				public Object run() {
+					return fft.getMagnitudes(signal.clone());
+				}
+			});
+			cases.add(new BenchmarkCase("fft/getRealMagnitudes/" + fftSizes[i]) {
+				public Object run() {
+					return fft.getRealMagnitudes(signal.clone());
+				}
+			});
+		}
+
+		// spectrogram kernels on a frame of the song, the magnitudes of the 2048 sample frame as in fingerprinting
+		final short[] songAmplitudes = song.getSampleAmplitudes();
+		WindowFunction windowFunction = new WindowFunction();
+		windowFunction.setWindowType(WindowFunction.HAMMING);
+		final double[] hammingWindow = windowFunction.generate(2048);
+		final double[] windowedFrame = new double[2048];
+		final double[] frameMagnitudes = new double[512];
+		cases.add(new BenchmarkCase("kernels/window/2048") {
+			public Object run() {
+				SpectrumKernels.window(songAmplitudes, 0, hammingWindow, windowedFrame);
+				return windowedFrame;
+			}
+		});
+		cases.add(new BenchmarkCase("kernels/getMagnitudes/512") {
+			public Object run() {
+				SpectrumKernels.getMagnitudes(windowedFrame, frameMagnitudes, 0, 512);
+				return frameMagnitudes;
+			}
+		});
+
+		// fingerprinting, the wave is copied as extraction updates the sample rate of its header
+		final FingerprintManager fingerprintManager = new FingerprintManager();
+		cases.add(new BenchmarkCase("fingerprint/extract/song") {
+			public Object run() {
+				return fingerprintManager.extractFingerprint(copyWave(song, song.getBytes()));
+			}
+		});
+		final FingerprintManager floatFingerprintManager = new FingerprintManager();
+		floatFingerprintManager.setFloatSpectrogram(true);
+		cases.add(new BenchmarkCase("fingerprint/extract/song-float") {
+			public Object run() {
+				return floatFingerprintManager.extractFingerprint(copyWave(song, song.getBytes()));
+			}
+		});
+		cases.add(new BenchmarkCase("fingerprint/extract/synthetic") {
+			public Object run() {
+				return fingerprintManager.extractFingerprint(copyWave(synthetic, synthetic.getBytes()));
+			}
+		});
+
+		final byte[] songFingerprint = fingerprintManager.extractFingerprint(copyWave(song, song.getBytes()));
+		final byte[] clipFingerprint = new Wave(CLIP).getFingerprint();
+		final PairManager pairManager = new PairManager();
+		cases.add(new BenchmarkCase("pairs/getPair_PositionList_Table/song") {
+			public Object run() {
+				return pairManager.getPair_PositionList_Table(songFingerprint);
+			}
+		});
+		cases.add(new BenchmarkCase("pairs/getPairTable/song") {
+			public Object run() {
+				return pairManager.getPairTable(songFingerprint);
+			}
+		});
+		cases.add(new BenchmarkCase("similarity/song-clip") {
+			public Object run() {
+				return new FingerprintSimilarityComputer(songFingerprint, clipFingerprint).getFingerprintsSimilarity();
+			}
+		});
+		cases.add(new BenchmarkCase("similarity/song-clip-progressive") {
+			public Object run() {
+				FingerprintSimilarityComputer fingerprintSimilarityComputer = new FingerprintSimilarityComputer(songFingerprint, clipFingerprint);
+				fingerprintSimilarityComputer.setEarlyTermination(0.2f, 2);
+				return fingerprintSimilarityComputer.getFingerprintsSimilarity();
+			}
+		});
+
+		// whistle detection on every frame of the whistle wave, as WaveTypeDetector does
+		Wave whistle = new Wave(WHISTLE);
+		final WhistleApi whistleApi = new WhistleApi(whistle.getWaveHeader());
+		final byte[] whistleBytes = whistle.getBytes();
+		final int frameByteLength = 1024 * whistle.getWaveHeader().getBitsPerSample() / 8;
+		cases.add(new BenchmarkCase("whistle/isWhistle/whistle") {
+			public Object run() {
+				byte[] frame = new byte[frameByteLength];
+				int numWhistles = 0;
+				for (int pointer = 0; pointer + frameByteLength <= whistleBytes.length; pointer += frameByteLength) {
+					System.arraycopy(whistleBytes, pointer, frame, 0, frameByteLength);
+					if (whistleApi.isWhistle(frame)) {
+						numWhistles++;
+					}
+				}
+				return numWhistles;
+			}
+		});
+
+		return cases;
+	}
+
+	/**
+	 * Make a 16 bit mono wave of a tone sweep with noise, the noise is seeded so the wave is the same in every run
+	 *
+	 * @param seconds	length of the wave
+	 * @param sampleRate	sample rate of the wave
+	 * @return synthetic wave
+	 */
+	public static Wave getSyntheticWave(int seconds, int sampleRate) {
+		double[] signal = getSyntheticSignal(seconds * sampleRate, sampleRate);
+		byte[] data = new byte[signal.length * 2];
+		for (int i = 0; i < signal.length; i++) {
+			short amplitude = (short) signal[i];
+			data[i * 2] = (byte) amplitude;
+			data[i * 2 + 1] = (byte) (amplitude >> 8);
+		}
+
+		WaveHeader waveHeader = new WaveHeader();
+		waveHeader.setSampleRate(sampleRate);
+		waveHeader.setChannels(1);
+		waveHeader.setBitsPerSample(16);
+		waveHeader.setBlockAlign(2);
+		waveHeader.setByteRate(sampleRate * 2);
+		waveHeader.setSubChunk2Size(data.length);
+		waveHeader.setChunkSize(data.length + 36);
+		return new Wave(waveHeader, data);
+	}
+
+	// tone sweeping from 200Hz to 2000Hz every second, plus noise
+	private static double[] getSyntheticSignal(int numSamples, int sampleRate) {
+		Random random = new Random(numSamples);
+		double[] signal = new double[numSamples];
+		double phase = 0;
+		for (int i = 0; i < numSamples; i++) {
+			double frequency = 200 + 1800 * (i % sampleRate) / (double) sampleRate;
+			phase += 2 * Math.PI * frequency / sampleRate;
+			signal[i] = 8000 * Math.sin(phase) + 2000 * random.nextGaussian();
+		}
+		return signal;
+	}
+
+	// a wave with a copy of the header of the source wave
+	private static Wave copyWave(Wave wave, byte[] data) {
+		WaveHeader sourceHeader = wave.getWaveHeader();
+		WaveHeader waveHeader = new WaveHeader();
+		waveHeader.setSampleRate(sourceHeader.getSampleRate());
+		waveHeader.setChannels(sourceHeader.getChannels());
+		waveHeader.setBitsPerSample(sourceHeader.getBitsPerSample());
+		waveHeader.setBlockAlign(sourceHeader.getBlockAlign());
+		waveHeader.setByteRate(sourceHeader.getByteRate());
+		waveHeader.setSubChunk2Size(data.length);
+		waveHeader.setChunkSize(data.length + 36);
+		return new Wave(waveHeader, data);
+	}
+
+	private static byte[] readFile(String filename) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try {
+			InputStream inputStream = new FileInputStream(filename);
+			byte[] buffer = new byte[65536];
+			int numRead;
+			while ((numRead = inputStream.read(buffer)) >= 0) {
+				outputStream.write(buffer, 0, numRead);
+			}
+			inputStream.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return outputStream.toByteArray();
+	}
+}
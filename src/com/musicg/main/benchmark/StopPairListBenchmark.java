@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import com.musicg.fingerprint.FingerprintIndex;
+import com.musicg.fingerprint.FingerprintSimilarity;
+import com.musicg.fingerprint.PairManager;
+import com.musicg.fingerprint.PairTable;
+import com.musicg.fingerprint.StopPairList;
+import com.musicg.wave.Wave;
+import com.musicg.wave.WaveHeader;
+
+/**
+ * Query latency, postings scanned and recall of index searches with stop pair lists of several document frequencies
+ * The catalog is the bundled songs plus synthetic tracks of notes, the tracks share the pairs of common intervals as real music does
+ * The clips are noisy excerpts of the catalog tracks and the recorded clip of a bundled song, a clip is recalled if its track has the best score
+ *
+ * Usage: StopPairListBenchmark [numSyntheticTracks] [numClips]
+ */
+public class StopPairListBenchmark {
+
+	static final String[] SONGS = { "audio_work/songs/canon_d_major.wav",
+			"audio_work/songs/fing_fing_ha.wav",
+			"audio_work/songs/forrest_gump_theme.wav",
+			"audio_work/songs/imagine.wav",
+			"audio_work/songs/top_of_the_world.wav" };
+	static final String RECORDED_CLIP = "audio_work/songs/top_of_the_world_rec.wav";
+	static final int RECORDED_CLIP_TRACK = 4;
+	private static final String STOP_PAIR_FILE = "out/benchmark.stoppairs";
+
+	private static final int SAMPLE_RATE = 22050;
+	static final int TRACK_SECONDS = 30;
+	static final int CLIP_SECONDS = 8;
+
+	public static void main(String[] args) {
+
+		int numSyntheticTracks = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int numClips = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		Random random = new Random(1);
+
+		// the catalog
+		List<Wave> tracks = new ArrayList<Wave>();
+		for (int i = 0; i < SONGS.length; i++) {
+			tracks.add(new Wave(SONGS[i]));
+		}
+		for (int i = 0; i < numSyntheticTracks; i++) {
+			tracks.add(getSyntheticTrack(random, TRACK_SECONDS));
+		}
+		FingerprintIndex fingerprintIndex = new FingerprintIndex();
+		for (int i = 0; i < tracks.size(); i++) {
+			fingerprintIndex.addFingerprint(i, tracks.get(i).getFingerprint());
+		}
+		System.out.println(fingerprintIndex.getNumTracks() + " tracks, " + fingerprintIndex.getNumPairHashcodes() + " pairs, " + fingerprintIndex.getNumPostings() + " postings");
+
+		// the clips
+		List<byte[]> clipFingerprints = new ArrayList<byte[]>();
+		List<Integer> clipTracks = new ArrayList<Integer>();
+		clipFingerprints.add(new Wave(RECORDED_CLIP).getFingerprint());
+		clipTracks.add(RECORDED_CLIP_TRACK);
+		for (int i = 1; i < numClips; i++) {
+			int trackId = random.nextInt(tracks.size());
+			clipFingerprints.add(getNoisyExcerpt(random, tracks.get(trackId), CLIP_SECONDS).getFingerprint());
+			clipTracks.add(trackId);
+		}
+
+		// search without stop pairs, then with the lists saved and loaded as in production
+		float[] maxDocumentFrequencies = { 1, 0.5f, 0.2f, 0.1f, 0.05f, 0.02f };
+		for (int i = 0; i < maxDocumentFrequencies.length; i++) {
+			StopPairList stopPairList = null;
+			if (maxDocumentFrequencies[i] < 1) {
+				StopPairList.build(fingerprintIndex, maxDocumentFrequencies[i]).saveAsFile(STOP_PAIR_FILE);
+				stopPairList = new StopPairList(STOP_PAIR_FILE);
+			}
+			fingerprintIndex.setStopPairList(stopPairList);
+
+			// warm up
+			for (int c = 0; c < Math.min(10, clipFingerprints.size()); c++) {
+				fingerprintIndex.search(clipFingerprints.get(c));
+			}
+
+			int numRecalled = 0;
+			long numScannedPostings = 0;
+			long nanos = 0;
+			for (int c = 0; c < clipFingerprints.size(); c++) {
+				long time = System.nanoTime();
+				HashMap<Integer, FingerprintSimilarity> result = fingerprintIndex.search(clipFingerprints.get(c));
+				nanos += System.nanoTime() - time;
+				if (getBestTrack(result) == clipTracks.get(c)) {
+					numRecalled++;
+				}
+				numScannedPostings += getNumScannedPostings(fingerprintIndex, stopPairList, clipFingerprints.get(c));
+			}
+
+			int numClipsSearched = clipFingerprints.size();
+			System.out.println("max document frequency " + maxDocumentFrequencies[i] + ": "
+					+ (stopPairList == null ? 0 : stopPairList.size()) + " stop pairs, "
+					+ numScannedPostings / numClipsSearched + " postings/search, "
+					+ nanos / numClipsSearched / 1000 + " us/search, recall "
+					+ numRecalled + "/" + numClipsSearched);
+		}
+	}
+
+	// postings scanned by a search, the clip positions of a pair each scan its postings
+	private static long getNumScannedPostings(FingerprintIndex fingerprintIndex, StopPairList stopPairList, byte[] clipFingerprint) {
+		PairManager pairManager = new PairManager(false, fingerprintIndex.getPairHash());
+		pairManager.setStopPairList(stopPairList);
+		PairTable clipPairTable = pairManager.getPairTable(clipFingerprint);
+		int[] clipPairHashcodes = clipPairTable.getPairHashcodes();
+		long numScannedPostings = 0;
+		for (int i = 0; i < clipPairTable.size(); i++) {
+			numScannedPostings += fingerprintIndex.getNumPostings(clipPairHashcodes[i]);
+		}
+		return numScannedPostings;
+	}
+
+	private static int getBestTrack(HashMap<Integer, FingerprintSimilarity> result) {
+		int bestTrack = -1;
+		float bestScore = 0;
+		Iterator<Entry<Integer, FingerprintSimilarity>> resultIterator = result.entrySet().iterator();
+		while (resultIterator.hasNext()) {
+			Entry<Integer, FingerprintSimilarity> entry = resultIterator.next();
+			if (entry.getValue().getScore() > bestScore) {
+				bestScore = entry.getValue().getScore();
+				bestTrack = entry.getKey();
+			}
+		}
+		return bestTrack;
+	}
+
+	// notes of a chromatic scale over three octaves from a random tuning, with two harmonics, plus noise
+	static Wave getSyntheticTrack(Random random, int seconds) {
+		double baseFrequency = 110 + 330 * random.nextDouble();
+		double[] signal = new double[SAMPLE_RATE * seconds];
+		int start = 0;
+		while (start < signal.length) {
+			int length = (int) (SAMPLE_RATE * (0.2 + 0.6 * random.nextDouble()));
+			double frequency = baseFrequency * Math.pow(2, random.nextInt(36) / 12.0);
+			for (int n = 0; n < length && start + n < signal.length; n++) {
+				double envelope = Math.exp(-3.0 * n / length);
+				double phase = 2 * Math.PI * frequency * n / SAMPLE_RATE;
+				signal[start + n] += 6000 * envelope * (Math.sin(phase) + 0.5 * Math.sin(2 * phase) + 0.25 * Math.sin(3 * phase));
+			}
+			start += length;
+		}
+		for (int n = 0; n < signal.length; n++) {
+			signal[n] += 300 * random.nextGaussian();
+		}
+		return getWave(signal, SAMPLE_RATE);
+	}
+
+	// an excerpt at a random position of the track, plus noise
+	static Wave getNoisyExcerpt(Random random, Wave track, int seconds) {
+		short[] amplitudes = track.getSampleAmplitudes();
+		int trackSampleRate = track.getWaveHeader().getSampleRate();
+		int length = Math.min(trackSampleRate * seconds, amplitudes.length);
+		int start = random.nextInt(amplitudes.length - length + 1);
+
+		double[] signal = new double[length];
+		for (int n = 0; n < length; n++) {
+			signal[n] = amplitudes[start + n] + 2000 * random.nextGaussian();
+		}
+
+		return getWave(signal, trackSampleRate);
+	}
+
+	private static Wave getWave(double[] signal, int sampleRate) {
+		byte[] data = new byte[signal.length * 2];
+		for (int i = 0; i < signal.length; i++) {
+			int amplitude = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, signal[i]));
+			data[i * 2] = (byte) amplitude;
+			data[i * 2 + 1] = (byte) (amplitude >> 8);
+		}
+
+		WaveHeader waveHeader = new WaveHeader();
+		waveHeader.setSampleRate(sampleRate);
+		waveHeader.setChannels(1);
+		waveHeader.setBitsPerSample(16);
+		waveHeader.setBlockAlign(2);
+		waveHeader.setByteRate(sampleRate * 2);
+		waveHeader.setSubChunk2Size(data.length);
+		waveHeader.setChunkSize(data.length + 36);
+		return new Wave(waveHeader, data);
+	}
+}
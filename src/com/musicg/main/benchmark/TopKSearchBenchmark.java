@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import com.musicg.fingerprint.FingerprintIndex;
+import com.musicg.fingerprint.FingerprintSimilarity;
+import com.musicg.fingerprint.MatchResult;
+import com.musicg.wave.Wave;
+
+/**
+ * Query latency of the top-K searches with candidate pruning against the search of all tracks
+ * The catalog and clips are those of StopPairListBenchmark, the top-K results are checked against the best scores of the full search
+ * The pruned search is approximate, the exact top-K recall is the number of clips whose top-K scores are those of the full search
+ *
+ * Usage: TopKSearchBenchmark [numSyntheticTracks] [numClips] [topK]
+ */
+public class TopKSearchBenchmark {
+
+	public static void main(String[] args) {
+
+		int numSyntheticTracks = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		int numClips = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int topK = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		Random random = new Random(1);
+
+		// the catalog
+		List<Wave> tracks = new ArrayList<Wave>();
+		for (int i = 0; i < StopPairListBenchmark.SONGS.length; i++) {
+			tracks.add(new Wave(StopPairListBenchmark.SONGS[i]));
+		}
+		for (int i = 0; i < numSyntheticTracks; i++) {
+			tracks.add(StopPairListBenchmark.getSyntheticTrack(random, StopPairListBenchmark.TRACK_SECONDS));
+		}
+		FingerprintIndex fingerprintIndex = new FingerprintIndex();
+		for (int i = 0; i < tracks.size(); i++) {
+			fingerprintIndex.addFingerprint(i, tracks.get(i).getFingerprint());
+		}
+		System.out.println(fingerprintIndex.getNumTracks() + " tracks, " + fingerprintIndex.getNumPairHashcodes() + " pairs, " + fingerprintIndex.getNumPostings() + " postings");
+
+		// the clips
+		List<byte[]> clipFingerprints = new ArrayList<byte[]>();
+		List<Integer> clipTracks = new ArrayList<Integer>();
+		clipFingerprints.add(new Wave(StopPairListBenchmark.RECORDED_CLIP).getFingerprint());
+		clipTracks.add(StopPairListBenchmark.RECORDED_CLIP_TRACK);
+		for (int i = 1; i < numClips; i++) {
+			int trackId = random.nextInt(tracks.size());
+			clipFingerprints.add(StopPairListBenchmark.getNoisyExcerpt(random, tracks.get(trackId), StopPairListBenchmark.CLIP_SECONDS).getFingerprint());
+			clipTracks.add(trackId);
+		}
+
+		// warm up
+		for (int c = 0; c < Math.min(10, clipFingerprints.size()); c++) {
+			fingerprintIndex.search(clipFingerprints.get(c));
+			fingerprintIndex.search(clipFingerprints.get(c), topK);
+		}
+
+		// full search, every track sharing a pair is scored
+		int numClipsSearched = clipFingerprints.size();
+		List<float[]> fullTopScores = new ArrayList<float[]>();
+		int numRecalled = 0;
+		long nanos = 0;
+		for (int c = 0; c < numClipsSearched; c++) {
+			long time = System.nanoTime();
+			HashMap<Integer, FingerprintSimilarity> result = fingerprintIndex.search(clipFingerprints.get(c));
+			float[] topScores = getTopScores(result, topK);
+			nanos += System.nanoTime() - time;
+			fullTopScores.add(topScores);
+			if (getBestTrack(result) == clipTracks.get(c)) {
+				numRecalled++;
+			}
+		}
+		System.out.println("full search: " + nanos / numClipsSearched / 1000 + " us/search, recall " + numRecalled + "/" + numClipsSearched);
+
+		// top-K searches of several candidates per result
+		int[] candidatesPerResult = { 1, 2, 4, 8 };
+		for (int i = 0; i < candidatesPerResult.length; i++) {
+			int numCandidates = topK * candidatesPerResult[i];
+			numRecalled = 0;
+			int numSameScores = 0;
+			nanos = 0;
+			for (int c = 0; c < numClipsSearched; c++) {
+				long time = System.nanoTime();
+				List<MatchResult> matchResults = fingerprintIndex.search(clipFingerprints.get(c), topK, numCandidates);
+				nanos += System.nanoTime() - time;
+				if (!matchResults.isEmpty() && matchResults.get(0).getTrackId() == clipTracks.get(c)) {
+					numRecalled++;
+				}
+				if (isSameScores(matchResults, fullTopScores.get(c))) {
+					numSameScores++;
+				}
+			}
+			System.out.println("top-" + topK + " search of " + numCandidates + " candidates: " + nanos / numClipsSearched / 1000
+					+ " us/search, recall " + numRecalled + "/" + numClipsSearched + ", exact top-" + topK + " recall "
+					+ numSameScores + "/" + numClipsSearched);
+		}
+	}
+
+	// the scores are compared rather than the tracks, the tracks of equal scores can be ranked in any order
+	private static boolean isSameScores(List<MatchResult> matchResults, float[] topScores) {
+		if (matchResults.size() != topScores.length) {
+			return false;
+		}
+		for (int i = 0; i < topScores.length; i++) {
+			if (matchResults.get(i).getScore() != topScores[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static float[] getTopScores(HashMap<Integer, FingerprintSimilarity> result, int topK) {
+		float[] scores = new float[result.size()];
+		int numScores = 0;
+		Iterator<FingerprintSimilarity> similarityIterator = result.values().iterator();
+		while (similarityIterator.hasNext()) {
+			scores[numScores++] = similarityIterator.next().getScore();
+		}
+		Arrays.sort(scores);
+
+		float[] topScores = new float[Math.min(topK, numScores)];
+		for (int i = 0; i < topScores.length; i++) {
+			topScores[i] = scores[numScores - 1 - i];
+		}
+		return topScores;
+	}
+
+	private static int getBestTrack(HashMap<Integer, FingerprintSimilarity> result) {
+		int bestTrack = -1;
+		float bestScore = 0;
+		Iterator<Entry<Integer, FingerprintSimilarity>> resultIterator = result.entrySet().iterator();
+		while (resultIterator.hasNext()) {
+			Entry<Integer, FingerprintSimilarity> entry = resultIterator.next();
+			if (entry.getValue().getScore() > bestScore) {
+				bestScore = entry.getValue().getScore();
+				bestTrack = entry.getKey();
+			}
+		}
+		return bestTrack;
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.demo;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+import com.musicg.fingerprint.FingerprintIndex;
+import com.musicg.fingerprint.FingerprintSearcher;
+import com.musicg.fingerprint.FingerprintSimilarity;
+import com.musicg.fingerprint.MappedFingerprintIndex;
+import com.musicg.wave.Wave;
+
+public class FingerprintIndexDemo {
+
+	public static void main(String[] args) {
+
+		String[] songs = { "audio_work/songs/canon_d_major.wav",
+				"audio_work/songs/fing_fing_ha.wav",
+				"audio_work/songs/forrest_gump_theme.wav",
+				"audio_work/songs/imagine.wav",
+				"audio_work/songs/top_of_the_world.wav" };
+
+		// index the songs once
+		FingerprintIndex fingerprintIndex = new FingerprintIndex();
+		for (int i = 0; i < songs.length; i++) {
+			fingerprintIndex.addFingerprint(i, new Wave(songs[i]).getFingerprint());
+		}
+
+		// save the index and open it again as a mapped index
+		fingerprintIndex.saveIndexAsFile("out/songs.index");
+		MappedFingerprintIndex mappedIndex = new MappedFingerprintIndex("out/songs.index");
+
+		// search the recorded clip against all songs
+		String recordedClip = "audio_work/songs/top_of_the_world_rec.wav";
+		Wave waveRec = new Wave(recordedClip);
+		search(fingerprintIndex, waveRec.getFingerprint(), songs);
+		search(mappedIndex, waveRec.getFingerprint(), songs);
+		mappedIndex.close();
+	}
+
+	private static void search(FingerprintSearcher searcher, byte[] clipFingerprint, String[] songs) {
+		HashMap<Integer, FingerprintSimilarity> result = searcher.search(clipFingerprint);
+
+		Iterator<Integer> trackIterator = result.keySet().iterator();
+		while (trackIterator.hasNext()) {
+			int trackId = trackIterator.next();
+			FingerprintSimilarity similarity = result.get(trackId);
+			System.out.println("clip is found at "
+					+ similarity.getsetMostSimilarTimePosition() + "s in "
+					+ songs[trackId] + " with similarity " + similarity.getSimilarity());
+		}
+	}
+}
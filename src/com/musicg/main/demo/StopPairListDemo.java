@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.demo;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import com.musicg.fingerprint.FingerprintIndex;
+import com.musicg.fingerprint.FingerprintSimilarity;
+import com.musicg.fingerprint.MappedFingerprintIndex;
+import com.musicg.fingerprint.StopPairList;
+import com.musicg.wave.Wave;
+
+/**
+ * Build the stop pairs of an ingested catalog and search with them
+ *
+ * Usage: StopPairListDemo [indexFile] [stopPairFile] [maxDocumentFrequency]
+ * The pairs found in more than maxDocumentFrequency of the tracks of the index are saved to the stop pair file
+ * The index is made from the bundled songs if the index file does not exist
+ */
+public class StopPairListDemo {
+
+	public static void main(String[] args) {
+
+		String indexFile = args.length > 0 ? args[0] : "out/songs.index";
+		String stopPairFile = args.length > 1 ? args[1] : "out/songs.stoppairs";
+		float maxDocumentFrequency = args.length > 2 ? Float.parseFloat(args[2]) : 0.5f;
+
+		String[] songs = { "audio_work/songs/canon_d_major.wav",
+				"audio_work/songs/fing_fing_ha.wav",
+				"audio_work/songs/forrest_gump_theme.wav",
+				"audio_work/songs/imagine.wav",
+				"audio_work/songs/top_of_the_world.wav" };
+
+		if (!new File(indexFile).exists()) {
+			FingerprintIndex fingerprintIndex = new FingerprintIndex();
+			for (int i = 0; i < songs.length; i++) {
+				fingerprintIndex.addFingerprint(i, new Wave(songs[i]).getFingerprint());
+			}
+			fingerprintIndex.saveIndexAsFile(indexFile);
+		}
+
+		// document frequencies of the pairs over the catalog, saved as the stop pair file
+		MappedFingerprintIndex mappedIndex = new MappedFingerprintIndex(indexFile);
+		StopPairList stopPairList = StopPairList.build(mappedIndex, maxDocumentFrequency);
+		stopPairList.saveAsFile(stopPairFile);
+		System.out.println(stopPairList.size() + " of " + mappedIndex.getNumPairHashcodes() + " pairs are found in more than "
+				+ maxDocumentFrequency + " of " + mappedIndex.getNumTracks() + " tracks, saved to " + stopPairFile);
+
+		// search the recorded clip with the saved stop pairs
+		mappedIndex.setStopPairList(new StopPairList(stopPairFile));
+		Wave waveRec = new Wave("audio_work/songs/top_of_the_world_rec.wav");
+		HashMap<Integer, FingerprintSimilarity> result = mappedIndex.search(waveRec.getFingerprint());
+		Iterator<Integer> trackIterator = result.keySet().iterator();
+		while (trackIterator.hasNext()) {
+			int trackId = trackIterator.next();
+			FingerprintSimilarity similarity = result.get(trackId);
+			System.out.println("clip is found at "
+					+ similarity.getsetMostSimilarTimePosition() + "s in track "
+					+ trackId + " with similarity " + similarity.getSimilarity());
+		}
+		mappedIndex.close();
+	}
+}
@@ -0,0 +1,141 @@
+package com.musicg.processor;
+
+/**
+ * Pick the top intensities of each filter bank of the frames, in one pass over each frame
+ * The frequency units are divided into numFilterBanks banks of numFrequencyUnits/numFilterBanks units, the units above the last bank are not taken
+ * In a bank, the intensities not smaller than the numPointsPerBank-th largest intensity are taken, same as RobustIntensityProcessor on the bank
+ *
+ * Only a buffer of numPointsPerBank intensities is used, no bank matrix is copied, so a processor is not thread safe
+ *
+ * @author jacquet
+ *
+ */
+public class FilterBankPeakProcessor implements IntensityProcessor{
+
+	private double[][] intensities;
+	private int numFilterBanks;
+	private int numPointsPerBank;
+	private double[] topIntensities;	// largest intensities of a bank, in descending order
+
+	/**
+	 * Constructor for picking the peaks of single frames with getPeaks()
+	 *
+	 * @param numFilterBanks	number of filter banks of a frame
+	 * @param numPointsPerBank	number of top intensities in each bank, at least 1
+	 */
+	public FilterBankPeakProcessor(int numFilterBanks, int numPointsPerBank){
+		this(null, numFilterBanks, numPointsPerBank);
+	}
+
+	/**
+	 * Constructor for the processor chains
+	 *
+	 * @param intensities	intensities[frame][frequency unit]
+	 * @param numFilterBanks	number of filter banks of a frame
+	 * @param numPointsPerBank	number of top intensities in each bank, at least 1
+	 */
+	public FilterBankPeakProcessor(double[][] intensities, int numFilterBanks, int numPointsPerBank){
+		if (numPointsPerBank<1){
+			System.err.println("FilterBankPeakProcessor: number of points per bank must be at least 1");
+			numPointsPerBank=1;
+		}
+		this.intensities=intensities;
+		this.numFilterBanks=numFilterBanks;
+		this.numPointsPerBank=numPointsPerBank;
+		topIntensities=new double[numPointsPerBank];
+	}
+
+	/**
+	 * Keep the peaks of every frame, the other intensities are set to 0
+	 */
+	public void execute(){
+
+		int numX=intensities.length;
+		double[][] processedIntensities=new double[numX][];
+		int[] peaks=null;
+
+		for (int i=0; i<numX; i++){
+			double[] frameIntensities=intensities[i];
+			processedIntensities[i]=new double[frameIntensities.length];
+			if (peaks==null || peaks.length<frameIntensities.length){
+				peaks=new int[frameIntensities.length];
+			}
+
+			int numPeaks=getPeaks(frameIntensities, peaks);
+			for (int j=0; j<numPeaks; j++){
+				processedIntensities[i][peaks[j]]=frameIntensities[peaks[j]];
+			}
+		}
+		intensities=processedIntensities;
+	}
+
+	public double[][] getIntensities(){
+		return intensities;
+	}
+
+	/**
+	 * Get the peaks of a frame, only the peaks having intensity larger than 0 are returned
+	 *
+	 * @param frameIntensities	intensities of the frame
+	 * @param peaks	frequency units of the peaks in ascending order, length of at least the frame's to hold ties
+	 * @return number of peaks
+	 */
+	public int getPeaks(double[] frameIntensities, int[] peaks){
+
+		int bandwidthPerBank=frameIntensities.length/numFilterBanks;
+		int numPeaks=0;
+
+		for (int b=0; b<numFilterBanks; b++){
+			int start=b*bandwidthPerBank;
+			int end=start+bandwidthPerBank;
+			if (start==end){
+				continue;
+			}
+
+			double passValue=getPassValue(frameIntensities, start, end);
+
+			for (int y=start; y<end; y++){
+				if (frameIntensities[y]>=passValue && frameIntensities[y]>0){
+					peaks[numPeaks++]=y;
+				}
+			}
+		}
+
+		return numPeaks;
+	}
+
+	// the numPointsPerBank-th largest intensity of the bank, counting equal intensities, the smallest intensity if the bank is narrower
+	private double getPassValue(double[] frameIntensities, int start, int end){
+
+		if (numPointsPerBank==1){
+			double max=frameIntensities[start];
+			for (int y=start+1; y<end; y++){
+				if (frameIntensities[y]>max){
+					max=frameIntensities[y];
+				}
+			}
+			return max;
+		}
+
+		int numTop=0;
+		for (int y=start; y<end; y++){
+			double intensity=frameIntensities[y];
+			if (numTop==numPointsPerBank){
+				if (intensity<=topIntensities[numTop-1]){
+					continue;
+				}
+				numTop--;
+			}
+
+			// insertion into the descending buffer
+			int j=numTop;
+			while (j>0 && topIntensities[j-1]<intensity){
+				topIntensities[j]=topIntensities[j-1];
+				j--;
+			}
+			topIntensities[j]=intensity;
+			numTop++;
+		}
+		return topIntensities[numTop-1];
+	}
+}
@@ -17,6 +17,20 @@ public class TopManyPointsProcessorChain{
 		process();
 	}
 	
+	/**
+	 * Constructor, keep the top points of each filter bank of the frames
+	 * 
+	 * @param intensities	intensities[frame][frequency unit]
+	 * @param numPoints	number of top points in each bank
+	 * @param numFilterBanks	number of filter banks of a frame
+	 */
+	public TopManyPointsProcessorChain(double[][] intensities, int numPoints, int numFilterBanks){
+		this.intensities=intensities;
+		FilterBankPeakProcessor peakProcessor=new FilterBankPeakProcessor(intensities,numFilterBanks,numPoints);
+		processorList.add(peakProcessor);
+		process();
+	}
+	
 	private void process(){
 		Iterator<IntensityProcessor> iterator=processorList.iterator();
 		while(iterator.hasNext()){
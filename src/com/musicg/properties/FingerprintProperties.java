@@ -18,7 +18,10 @@ package com.musicg.properties;
 
 public class FingerprintProperties{
 	
-	protected static FingerprintProperties instance=null;
+	public static final int DEFAULT_PAIR_HASH_DELTA_FRAME_BITS=7;
+	public static final int DEFAULT_PAIR_HASH_FREQUENCY_BITS=12;
+	
+	protected static volatile FingerprintProperties instance=null;	// volatile for the double checked locking
 
 	private int numRobustPointsPerFrame=4;	// number of points in each frame, i.e. top 4 intensities in fingerprint
 	private int sampleSizePerFrame=2048;	// number of audio samples in a frame, it is suggested to be the FFT Size
@@ -36,6 +39,8 @@ public class FingerprintProperties{
 	private int numAnchorPointsPerInterval=10;
 	private int anchorPointsIntervalLength=4;	// in frames (5fps,4 overlap per second)
 	private int maxTargetZoneDistance=4;	// in frame (5fps,4 overlap per second)
+	private int pairHashDeltaFrameBits=DEFAULT_PAIR_HASH_DELTA_FRAME_BITS;	// bits of x2-x1 in a pair hashcode, up to 127 frames
+	private int pairHashFrequencyBits=DEFAULT_PAIR_HASH_FREQUENCY_BITS;	// bits of y1 and y2 in a pair hashcode, up to 4095 frequency units
 	
 	private int numFrequencyUnits=(upperBoundedFrequency-lowerBoundedFrequency+1)/fps+1;	// num frequency units
 	
@@ -102,8 +107,26 @@ public class FingerprintProperties{
 		return numFrequencyUnits;
 	}
 	
+	/**
+	 * Number of frequency units of a spectrogram row, as FastFourierTransform.getMagnitudes() of a frame
+	 * The fingerprint points are picked from the whole row, so their frequency units are in 0~getNumSpectrogramFrequencyUnits()-1
+	 * 
+	 * @return number of frequency units of a spectrogram row
+	 */
+	public int getNumSpectrogramFrequencyUnits() {
+		return sampleSizePerFrame/4;
+	}
+	
+	public int getPairHashDeltaFrameBits() {
+		return pairHashDeltaFrameBits;
+	}
+
+	public int getPairHashFrequencyBits() {
+		return pairHashFrequencyBits;
+	}
+	
 	public int getMaxPossiblePairHashcode(){
-		return maxTargetZoneDistance*numFrequencyUnits*numFrequencyUnits+numFrequencyUnits*numFrequencyUnits+numFrequencyUnits;
+		return maxTargetZoneDistance<<(2*pairHashFrequencyBits) | ((1<<(2*pairHashFrequencyBits))-1);
 	}
 
 	public int getSampleRate() {
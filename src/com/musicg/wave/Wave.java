@@ -16,15 +16,18 @@
 
 package com.musicg.wave;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.util.concurrent.ExecutorService;
 
 import com.musicg.fingerprint.FingerprintManager;
 import com.musicg.fingerprint.FingerprintSimilarity;
 import com.musicg.fingerprint.FingerprintSimilarityComputer;
+import com.musicg.wave.extension.FloatSpectrogram;
 import com.musicg.wave.extension.NormalizedSampleAmplitudes;
 import com.musicg.wave.extension.Spectrogram;
 
@@ -38,7 +41,7 @@ public class Wave implements Serializable{
 	private static final long serialVersionUID = 1L;
 	private WaveHeader waveHeader;
 	private byte[] data;	// little endian
-	private byte[] fingerprint;
+	private volatile byte[] fingerprint;	// extracted once it is read, threads may extract it at the same time
 
 	/**
 	 * Constructor
@@ -92,19 +95,41 @@ public class Wave implements Serializable{
 	
 	private void initWaveWithInputStream(InputStream inputStream) {
 		// reads the first 44 bytes for header
-		waveHeader = new WaveHeader(inputStream);
+		WaveStream waveStream = new WaveStream(inputStream);
+		waveHeader = waveStream.getWaveHeader();
+		data = new byte[0];
 
 		if (waveHeader.isValid()) {
-			// load data
+			// load data, inputStream.available() is not reliable for non-file streams, so read until the end of the data chunk
 			try {
-				data = new byte[inputStream.available()];
-				inputStream.read(data);
+				long dataSize = waveHeader.getSubChunk2Size();
+				if (dataSize > 0 && dataSize < Integer.MAX_VALUE) {
+					data = new byte[(int) dataSize];
+					int pointer = 0;
+					int numRead;
+					while (pointer < data.length && (numRead = waveStream.readBytes(data, pointer, data.length - pointer)) > 0) {
+						pointer += numRead;
+					}
+					if (pointer < data.length) {
+						// truncated wave
+						byte[] readData = new byte[pointer];
+						System.arraycopy(data, 0, readData, 0, pointer);
+						data = readData;
+					}
+				} else {
+					// unknown data size, e.g. a streamed wave
+					ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
+					byte[] block = new byte[WaveStream.DEFAULT_BLOCK_BYTE_SIZE];
+					int numRead;
+					while ((numRead = waveStream.readBytes(block)) >= 0) {
+						dataStream.write(block, 0, numRead);
+					}
+					data = dataStream.toByteArray();
+				}
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 			// end load data
-		} else {
-			System.err.println("Invalid Wave Header");
 		}
 	}
 
@@ -237,6 +262,31 @@ public class Wave implements Serializable{
 		return new Spectrogram(this,fftSampleSize,overlapFactor);
 	}
 	
+	/**
+	 * Get the wave spectrogram, the frames are transformed in parallel
+	 * 
+	 * @param fftSampleSize	number of sample in fft, the value needed to be a number to power of 2
+	 * @param overlapFactor	1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for no overlapping
+	 * @param executor	executor of the fft tasks, e.g. a ForkJoinPool, null for serial
+	 * 
+	 * @return spectrogram
+	 */
+	public Spectrogram getSpectrogram(int fftSampleSize, int overlapFactor, ExecutorService executor) {
+		return new Spectrogram(this,fftSampleSize,overlapFactor,executor);
+	}
+	
+	/**
+	 * Get the wave spectrogram in float precision, in half the memory of getSpectrogram()
+	 * 
+	 * @param fftSampleSize	number of sample in fft, the value needed to be a number to power of 2
+	 * @param overlapFactor	1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for no overlapping
+	 * 
+	 * @return float spectrogram
+	 */
+	public FloatSpectrogram getFloatSpectrogram(int fftSampleSize, int overlapFactor) {
+		return new FloatSpectrogram(this,fftSampleSize,overlapFactor);
+	}
+	
 	/**
 	 * Get the wave data in bytes
 	 * 
@@ -62,6 +62,28 @@ public class WaveHeader {
 		valid=true;
 	}	
 
+	/**
+	 * Constructor, copy of a header
+	 * 
+	 * @param waveHeader	header to be copied
+	 */
+	public WaveHeader(WaveHeader waveHeader){
+		valid=waveHeader.valid;
+		chunkId=waveHeader.chunkId;
+		chunkSize=waveHeader.chunkSize;
+		format=waveHeader.format;
+		subChunk1Id=waveHeader.subChunk1Id;
+		subChunk1Size=waveHeader.subChunk1Size;
+		audioFormat=waveHeader.audioFormat;
+		channels=waveHeader.channels;
+		sampleRate=waveHeader.sampleRate;
+		byteRate=waveHeader.byteRate;
+		blockAlign=waveHeader.blockAlign;
+		bitsPerSample=waveHeader.bitsPerSample;
+		subChunk2Id=waveHeader.subChunk2Id;
+		subChunk2Size=waveHeader.subChunk2Size;
+	}
+
 	public WaveHeader(InputStream inputStream) {
 		valid = loadHeader(inputStream);
 	}
@@ -70,7 +92,13 @@ public class WaveHeader {
 
 		byte[] headerBuffer = new byte[HEADER_BYTE_LENGTH];
 		try {
-			inputStream.read(headerBuffer);
+			// a stream, e.g. a socket, may return less than the requested bytes in one read
+			int numHeaderBytes = 0;
+			int numRead;
+			while (numHeaderBytes < HEADER_BYTE_LENGTH
+					&& (numRead = inputStream.read(headerBuffer, numHeaderBytes, HEADER_BYTE_LENGTH - numHeaderBytes)) > 0) {
+				numHeaderBytes += numRead;
+			}
 
 			// read header
 			int pointer = 0;
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Read WAVE data block by block from a wave input stream, e.g. a file or a socket
+ * Only one block of data is held in memory, so a wave of any length can be processed with bounded memory
+ *
+ * @author Jacquet Wong
+ */
+public class WaveStream {
+
+	public static final int DEFAULT_BLOCK_BYTE_SIZE = 65536;
+
+	private InputStream inputStream;
+	private WaveHeader waveHeader;
+	private int bytePerSample;
+	private long remainingBytes;	// bytes of the data chunk not yet read, Long.MAX_VALUE if the size is unknown
+	private byte[] pendingSample;	// bytes of an incomplete sample, completed by the next read
+	private int pendingBytes;
+	private byte[] blockBuffer;	// reused by readSamples
+
+	/**
+	 * Constructor
+	 *
+	 * @param filename
+	 *            Wave file
+	 * @throws IOException
+	 */
+	public WaveStream(String filename) throws IOException {
+		this(new FileInputStream(filename));
+	}
+
+	/**
+	 * Constructor, the header is read from the input stream immediately
+	 *
+	 * @param inputStream
+	 *            Wave input stream, closed by close()
+	 */
+	public WaveStream(InputStream inputStream) {
+		this.inputStream = inputStream;
+		waveHeader = new WaveHeader(inputStream);
+		bytePerSample = waveHeader.getBitsPerSample() / 8;
+		remainingBytes = waveHeader.getSubChunk2Size();
+
+		// streamed waves usually have no data size in the header
+		if (remainingBytes <= 0 || remainingBytes == 0xFFFFFFFFL) {
+			remainingBytes = Long.MAX_VALUE;
+		}
+
+		if (!waveHeader.isValid()) {
+			System.err.println("Invalid Wave Header");
+			remainingBytes = 0;
+			bytePerSample = 1;
+		}
+		pendingSample = new byte[bytePerSample];
+		pendingBytes = 0;
+		blockBuffer = new byte[0];
+	}
+
+	/**
+	 * Get the wave header
+	 *
+	 * @return waveHeader
+	 */
+	public WaveHeader getWaveHeader() {
+		return waveHeader;
+	}
+
+	/**
+	 * Read the next block of wave data in bytes, only whole samples are returned
+	 *
+	 * @param buffer
+	 *            buffer to be filled, little endian
+	 * @return number of bytes read, -1 if the end of the data is reached
+	 * @throws IOException
+	 */
+	public int readBytes(byte[] buffer) throws IOException {
+		return readBytes(buffer, 0, buffer.length);
+	}
+
+	/**
+	 * Read the next block of wave data in bytes, only whole samples are returned
+	 *
+	 * @param buffer
+	 *            buffer to be filled, little endian
+	 * @param offset
+	 *            start position in the buffer
+	 * @param length
+	 *            maximum number of bytes to read
+	 * @return number of bytes read, -1 if the end of the data is reached
+	 * @throws IOException
+	 */
+	public int readBytes(byte[] buffer, int offset, int length) throws IOException {
+		int maxBytes = length - length % bytePerSample;
+		int numBytes = pendingBytes;
+		if (numBytes > 0) {
+			System.arraycopy(pendingSample, 0, buffer, offset, numBytes);
+			pendingBytes = 0;
+		}
+
+		while (numBytes < maxBytes && remainingBytes > 0) {
+			int numRead = inputStream.read(buffer, offset + numBytes, (int) Math.min(maxBytes - numBytes, remainingBytes));
+			if (numRead < 0) {
+				remainingBytes = 0;
+				break;
+			}
+			numBytes += numRead;
+			remainingBytes -= numRead;
+		}
+
+		// keep the incomplete sample for the next read
+		int incompleteBytes = numBytes % bytePerSample;
+		if (incompleteBytes > 0) {
+			numBytes -= incompleteBytes;
+			if (remainingBytes > 0) {
+				System.arraycopy(buffer, offset + numBytes, pendingSample, 0, incompleteBytes);
+				pendingBytes = incompleteBytes;
+			}
+		}
+
+		if (numBytes == 0 && remainingBytes == 0) {
+			return -1;
+		}
+		return numBytes;
+	}
+
+	/**
+	 * Read the next block of sample amplitudes (depends on the header), same as Wave.getSampleAmplitudes()
+	 *
+	 * @param amplitudes
+	 *            buffer to be filled with amplitudes
+	 * @return number of samples read, -1 if the end of the data is reached
+	 * @throws IOException
+	 */
+	public int readSamples(short[] amplitudes) throws IOException {
+		if (blockBuffer.length != amplitudes.length * bytePerSample) {
+			blockBuffer = new byte[amplitudes.length * bytePerSample];
+		}
+		int numBytes = readBytes(blockBuffer);
+		if (numBytes < 0) {
+			return -1;
+		}
+
+		int numSamples = numBytes / bytePerSample;
+		int pointer = 0;
+		for (int i = 0; i < numSamples; i++) {
+			short amplitude = 0;
+			for (int byteNumber = 0; byteNumber < bytePerSample; byteNumber++) {
+				// little endian
+				amplitude |= (short) ((blockBuffer[pointer++] & 0xFF) << (byteNumber * 8));
+			}
+			amplitudes[i] = amplitude;
+		}
+		return numSamples;
+	}
+
+	/**
+	 * Close the input stream
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		inputStream.close();
+	}
+}
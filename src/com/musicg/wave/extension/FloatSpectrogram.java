@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave.extension;
+
+import com.musicg.dsp.FastFourierTransform;
+import com.musicg.dsp.SpectrumKernels;
+import com.musicg.dsp.WindowFunction;
+import com.musicg.wave.Wave;
+
+/**
+ * Spectrogram in float precision, each spectrogram is one array of numFrames*numFrequencyUnit intensities in frame order:
+ * intensity of frame f and frequency unit u is at f*numFrequencyUnit+u
+ * Takes half the memory of Spectrogram, the intensities differ from Spectrogram's by the float rounding only
+ *
+ * @author Jacquet Wong
+ */
+public class FloatSpectrogram{
+
+	private float[] spectrogram;	// relative spectrogram
+	private float[] absoluteSpectrogram;	// absolute spectrogram
+	private int fftSampleSize;	// number of sample in fft, the value needed to be a number to power of 2
+	private int overlapFactor;	// 1/overlapFactor overlapping, e.g. 1/4=25% overlapping
+	private int numFrames;	// number of frames of the spectrogram
+	private int framesPerSecond;	// frame per second of the spectrogram
+	private int numFrequencyUnit;	// number of y-axis unit
+	private double unitFrequency;	// frequency per y-axis unit
+
+	/**
+	 * Constructor
+	 *
+	 * @param wave
+	 * @param fftSampleSize	number of sample in fft, the value needed to be a number to power of 2
+	 * @param overlapFactor	1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for no overlapping
+	 */
+	public FloatSpectrogram(Wave wave, int fftSampleSize, int overlapFactor){
+
+		if (Integer.bitCount(fftSampleSize)==1){
+			this.fftSampleSize=fftSampleSize;
+		}
+		else{
+			System.err.print("The input number must be a power of 2");
+			this.fftSampleSize=Spectrogram.SPECTROGRAM_DEFAULT_FFT_SAMPLE_SIZE;
+		}
+
+		this.overlapFactor=overlapFactor;
+
+		buildSpectrogram(wave);
+	}
+
+	/**
+	 * Build spectrogram, the frames are the same as Spectrogram's
+	 */
+	private void buildSpectrogram(Wave wave){
+
+		short[] amplitudes=Spectrogram.getOverlappedAmplitudes(wave.getSampleAmplitudes(), fftSampleSize, overlapFactor);
+		numFrames=amplitudes.length/fftSampleSize;
+		framesPerSecond=(int)(numFrames/wave.length());
+		numFrequencyUnit=fftSampleSize/4;	// as FastFourierTransform.getMagnitudes()
+		unitFrequency=(double)wave.getWaveHeader().getSampleRate()/2/numFrequencyUnit;
+
+		WindowFunction window = new WindowFunction();
+		window.setWindowType("Hamming");
+		double[] win=window.generate(fftSampleSize);
+
+		absoluteSpectrogram=new float[numFrames*numFrequencyUnit];
+		spectrogram=new float[numFrames*numFrequencyUnit];
+		if (numFrames==0){
+			return;
+		}
+
+		// the max and min amplitudes are taken from the double magnitudes, same as Spectrogram
+		double maxAmp=Double.MIN_VALUE;
+		double minAmp=Double.MAX_VALUE;
+
+		double[] signal=new double[fftSampleSize];
+		double[] magnitudes=new double[numFrequencyUnit];
+		FastFourierTransform fft = new FastFourierTransform();
+		for (int f=0; f<numFrames; f++){
+			SpectrumKernels.window(amplitudes, f*fftSampleSize, win, signal);
+			fft.getMagnitudes(signal, magnitudes);
+			int pointer=f*numFrequencyUnit;
+			for (int j=0; j<numFrequencyUnit; j++){
+				absoluteSpectrogram[pointer+j]=(float)magnitudes[j];
+				if (magnitudes[j]>maxAmp){
+					maxAmp=magnitudes[j];
+				}
+				else if(magnitudes[j]<minAmp){
+					minAmp=magnitudes[j];
+				}
+			}
+		}
+
+		// normalization
+		// avoiding divided by zero
+		double minValidAmp=0.00000000001F;
+		if (minAmp==0){
+			minAmp=minValidAmp;
+		}
+
+		double diff=Math.log10(maxAmp/minAmp);	// perceptual difference
+		for (int i=0; i<absoluteSpectrogram.length; i++){
+			if (absoluteSpectrogram[i]<minValidAmp){
+				spectrogram[i]=0;
+			}
+			else{
+				// clamped at 0, as a magnitude rounded to float may be a little below the double minAmp
+				spectrogram[i]=Math.max((float)((Math.log10(absoluteSpectrogram[i]/minAmp))/diff), 0);
+			}
+		}
+		// end normalization
+	}
+
+	/**
+	 * Get spectrogram: spectrogram[frame*numFrequencyUnit+frequency]=intensity
+	 *
+	 * @return	logarithm normalized spectrogram
+	 */
+	public float[] getNormalizedSpectrogramData(){
+		return spectrogram;
+	}
+
+	/**
+	 * Get spectrogram: spectrogram[frame*numFrequencyUnit+frequency]=intensity
+	 *
+	 * @return	absolute spectrogram
+	 */
+	public float[] getAbsoluteSpectrogramData(){
+		return absoluteSpectrogram;
+	}
+
+	public float getNormalizedIntensity(int frame, int frequencyUnit){
+		return spectrogram[frame*numFrequencyUnit+frequencyUnit];
+	}
+
+	public float getAbsoluteIntensity(int frame, int frequencyUnit){
+		return absoluteSpectrogram[frame*numFrequencyUnit+frequencyUnit];
+	}
+
+	/**
+	 * Copy a frame of the logarithm normalized spectrogram
+	 *
+	 * @param frame	frame number
+	 * @param intensities	intensities to be filled, length of at least numFrequencyUnit
+	 */
+	public void getNormalizedFrame(int frame, double[] intensities){
+		copyFrame(spectrogram, frame, intensities);
+	}
+
+	/**
+	 * Copy a frame of the absolute spectrogram
+	 *
+	 * @param frame	frame number
+	 * @param intensities	intensities to be filled, length of at least numFrequencyUnit
+	 */
+	public void getAbsoluteFrame(int frame, double[] intensities){
+		copyFrame(absoluteSpectrogram, frame, intensities);
+	}
+
+	private void copyFrame(float[] data, int frame, double[] intensities){
+		int pointer=frame*numFrequencyUnit;
+		for (int j=0; j<numFrequencyUnit; j++){
+			intensities[j]=data[pointer+j];
+		}
+	}
+
+	public int getNumFrames(){
+		return numFrames;
+	}
+
+	public int getFramesPerSecond(){
+		return framesPerSecond;
+	}
+
+	public int getNumFrequencyUnit(){
+		return numFrequencyUnit;
+	}
+
+	public double getUnitFrequency(){
+		return unitFrequency;
+	}
+
+	public int getFftSampleSize() {
+		return fftSampleSize;
+	}
+
+	public int getOverlapFactor() {
+		return overlapFactor;
+	}
+}
@@ -16,12 +16,25 @@
 
 package com.musicg.wave.extension;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import com.musicg.dsp.FastFourierTransform;
+import com.musicg.dsp.PcmResampler;
+import com.musicg.dsp.SpectrumKernels;
 import com.musicg.dsp.WindowFunction;
 import com.musicg.wave.Wave;
+import com.musicg.wave.WaveHeader;
 
 /**
  * Handles the wave data in frequency-time domain.
+ * The spectrograms are computed when they are first read: the absolute spectrogram frame by frame, and the normalized spectrogram from all the frames
+ * so the wave must not be changed while the spectrogram is in use
  *
  * @author Jacquet Wong
  */
@@ -29,10 +42,19 @@ public class Spectrogram{
 	
 	public static final int SPECTROGRAM_DEFAULT_FFT_SAMPLE_SIZE = 1024;
 	public static final int SPECTROGRAM_DEFAULT_OVERLAP_FACTOR = 0;	// 0 for no overlapping
+	public static final int SPECTROGRAM_MIN_FRAMES_PER_TASK = 16;	// smallest number of frames transformed by a parallel task
 	
 	private Wave wave;
-	private double[][] spectrogram;	// relative spectrogram
-	private double[][] absoluteSpectrogram;	// absolute spectrogram
+	private ExecutorService executor;	// executor of the parallel fft, null for serial
+	private int sampleRate;	// sample rate of the frames, the wave is resampled to it if it is not the wave's
+	private int resamplerQuality;	// quality of resampling the wave, used if the wave is resampled
+	private double[][] spectrogram;	// relative spectrogram, null until it is read
+	private double[][] absoluteSpectrogram;	// absolute spectrogram, null until it is read, a frame is null until it is transformed
+	private int numAbsoluteFrames;	// number of transformed frames
+	private boolean releaseAbsoluteSpectrogram;	// drop the absolute spectrogram once normalized
+	private boolean isAbsoluteSpectrogramShared;	// the absolute spectrogram was handed out, so it is never normalized in place
+	private short[] amplitudes;	// samples of the frames, kept until every frame is transformed
+	private double[] win;	// window of the frames
 	private int fftSampleSize;	// number of sample in fft, the value needed to be a number to power of 2
 	private int overlapFactor;	// 1/overlapFactor overlapping, e.g. 1/4=25% overlapping
 	private int numFrames;	// number of frames of the spectrogram
@@ -77,103 +99,291 @@ public class Spectrogram{
 	}
 	
 	/**
-	 * Build spectrogram
+	 * Constructor, the frames are transformed in parallel by the executor, e.g. a ForkJoinPool
+	 * The spectrogram is identical to the one built serially
+	 * 
+	 * @param wave
+	 * @param fftSampleSize	number of sample in fft, the value needed to be a number to power of 2
+	 * @param overlapFactor	1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for no overlapping
+	 * @param executor	executor of the fft tasks, null for serial
 	 */
-	private void buildSpectrogram(){
+	public Spectrogram(Wave wave, int fftSampleSize, int overlapFactor, ExecutorService executor) {
+		this.wave=wave;
+		
+		if (Integer.bitCount(fftSampleSize)==1){
+			this.fftSampleSize=fftSampleSize;
+		}
+		else{
+			System.err.print("The input number must be a power of 2");
+			this.fftSampleSize=SPECTROGRAM_DEFAULT_FFT_SAMPLE_SIZE;
+		}
 
-		short[] amplitudes=wave.getSampleAmplitudes();
-		int numSamples = amplitudes.length;
+		this.overlapFactor=overlapFactor;
+		this.executor=executor;
 		
-		int pointer=0;
-		// overlapping
+		buildSpectrogram();
+	}
+	
+	/**
+	 * Constructor, the spectrogram of the wave resampled to sampleRate
+	 * The frames are transformed while the samples are decoded and resampled from the wave bytes, no resampled wave is made
+	 * The spectrogram is identical to the one of the wave resampled by Resampler, its frames are transformed all at once
+	 * 
+	 * @param wave
+	 * @param sampleRate	sample rate of the frames
+	 * @param resamplerQuality	Resampler.QUALITY_LINEAR, or PolyphaseResampler.QUALITY_FAST, QUALITY_MEDIUM or QUALITY_HIGH
+	 * @param fftSampleSize	number of sample in fft, the value needed to be a number to power of 2
+	 * @param overlapFactor	1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for no overlapping
+	 */
+	public Spectrogram(Wave wave, int sampleRate, int resamplerQuality, int fftSampleSize, int overlapFactor) {
+		this.wave=wave;
+		this.sampleRate=sampleRate;
+		this.resamplerQuality=resamplerQuality;
+		
+		if (Integer.bitCount(fftSampleSize)==1){
+			this.fftSampleSize=fftSampleSize;
+		}
+		else{
+			System.err.print("The input number must be a power of 2");
+			this.fftSampleSize=SPECTROGRAM_DEFAULT_FFT_SAMPLE_SIZE;
+		}
+
+		this.overlapFactor=overlapFactor;
+		
+		buildSpectrogram();
+	}
+	
+	/**
+	 * Set up the frames of the spectrogram, the frames are transformed when they are read
+	 */
+	private void buildSpectrogram(){
+
+		int numSamples;
+		if (sampleRate==0 || sampleRate==wave.getWaveHeader().getSampleRate()){
+			sampleRate=wave.getWaveHeader().getSampleRate();
+			numSamples=wave.size()/(wave.getWaveHeader().getBitsPerSample()/8);
+		}
+		else{
+			numSamples=getResampler().getNumSamples();
+		}
 		if (overlapFactor>1){
-			int numOverlappedSamples=numSamples*overlapFactor;
-			int backSamples=fftSampleSize*(overlapFactor-1)/overlapFactor;
-			int fftSampleSize_1=fftSampleSize-1;
-			short[] overlapAmp= new short[numOverlappedSamples];
-			pointer=0;
-			for (int i=0; i<amplitudes.length; i++){
-				overlapAmp[pointer++]=amplitudes[i];
-				if (pointer%fftSampleSize==fftSampleSize_1){
-					// overlap
-					i-=backSamples;
-				}
-			}
-			numSamples=numOverlappedSamples;
-			amplitudes=overlapAmp;
+			numSamples*=overlapFactor;
 		}
-		// end overlapping
-			
 		numFrames=numSamples/fftSampleSize;
 		framesPerSecond=(int)(numFrames/wave.length());
-
-
+		
+		if (numFrames>0){
+			numFrequencyUnit=fftSampleSize/4;	// as FastFourierTransform.getMagnitudes()
+			unitFrequency=(double)sampleRate/2/numFrequencyUnit;	// frequency could be caught within the half of nSamples according to Nyquist theory
+		}
+	}
+	
+	/**
+	 * Transform the frames from fromFrame (inclusive) to toFrame (exclusive) which are not transformed yet
+	 */
+	private void buildAbsoluteFrames(int fromFrame, int toFrame){
+		
+		if (absoluteSpectrogram==null){
+			absoluteSpectrogram=new double[numFrames][];
+			numAbsoluteFrames=0;
+		}
+		if (numAbsoluteFrames==numFrames){
+			return;
+		}
+		
+		if (sampleRate!=wave.getWaveHeader().getSampleRate()){
+			buildResampledFrames();
+			return;
+		}
+		
+		if (amplitudes==null){
+			amplitudes=getOverlappedAmplitudes(wave.getSampleAmplitudes(), fftSampleSize, overlapFactor);
+			WindowFunction window = new WindowFunction();
+			window.setWindowType("Hamming");
+			win=window.generate(fftSampleSize);
+		}
+		
+		int numMissingFrames=0;
+		for (int f=fromFrame; f<toFrame; f++){
+			if (absoluteSpectrogram[f]==null){
+				numMissingFrames++;
+			}
+		}
+		
+		// for each frame in signals, do fft on it
+		if (executor!=null){
+			transformFramesInParallel(amplitudes, win, fromFrame, toFrame);
+		}
+		else{
+			transformFrames(amplitudes, win, fromFrame, toFrame);
+		}
+		numAbsoluteFrames+=numMissingFrames;
+		
+		// the samples are not needed when every frame is transformed
+		if (numAbsoluteFrames==numFrames){
+			amplitudes=null;
+			win=null;
+		}
+	}
+	
+	/**
+	 * Transform all frames from the resampled samples, block by block
+	 * The frames are laid out by StreamingSpectrogram, the same as getOverlappedAmplitudes()
+	 */
+	private void buildResampledFrames(){
+		
+		StreamingSpectrogram streamingSpectrogram=new StreamingSpectrogram(fftSampleSize, overlapFactor, new SpectrogramFrameListener(){
+			public void onFrame(int frame, double[] magnitudes){
+				absoluteSpectrogram[frame]=magnitudes;
+			}
+		});
+		
+		PcmResampler resampler=getResampler();
+		short[] samples=new short[fftSampleSize];
+		int numRead;
+		while ((numRead=resampler.read(samples, 0, samples.length))>=0){
+			streamingSpectrogram.push(samples, 0, numRead);
+		}
+		streamingSpectrogram.finish();
+		
+		numAbsoluteFrames=numFrames;
+	}
+	
+	private PcmResampler getResampler(){
+		WaveHeader waveHeader=wave.getWaveHeader();
+		return new PcmResampler(wave.getBytes(), waveHeader.getBitsPerSample(), waveHeader.getSampleRate(), sampleRate, resamplerQuality);
+	}
+	
+	/**
+	 * Normalize the absolute spectrogram, in place if the absolute spectrogram is released after normalization and was not handed out
+	 */
+	private void buildNormalizedSpectrogram(){
+		
+		buildAbsoluteFrames(0, numFrames);
 			
-		// set signals for fft
-		WindowFunction window = new WindowFunction();
-		window.setWindowType("Hamming");
-		double[] win=window.generate(fftSampleSize);
-	
-		double[][] signals=new double[numFrames][];
-		for(int f=0; f<numFrames; f++) {
-			signals[f]=new double[fftSampleSize];
-			int startSample=f*fftSampleSize;
-			for (int n=0; n<fftSampleSize; n++){
-				signals[f][n]=amplitudes[startSample+n]*win[n];							
+		// normalization of absoultSpectrogram
+		spectrogram=releaseAbsoluteSpectrogram && !isAbsoluteSpectrogramShared ? absoluteSpectrogram : new double[numFrames][numFrequencyUnit];
+			
+		// set max and min amplitudes
+		double maxAmp=Double.MIN_VALUE;
+	    double minAmp=Double.MAX_VALUE;	
+		for (int i=0; i<numFrames; i++){
+			for (int j=0; j<numFrequencyUnit; j++){
+				if (absoluteSpectrogram[i][j]>maxAmp){
+					maxAmp=absoluteSpectrogram[i][j];
+				}
+				else if(absoluteSpectrogram[i][j]<minAmp){
+					minAmp=absoluteSpectrogram[i][j];
+				}
 			}
 		}
-		// end set signals for fft
+		// end set max and min amplitudes
 			
-		absoluteSpectrogram=new double[numFrames][];
-		// for each frame in signals, do fft on it
-		FastFourierTransform fft = new FastFourierTransform();
-		for (int i=0; i<numFrames; i++){			
-			absoluteSpectrogram[i]=fft.getMagnitudes(signals[i]);
+		// normalization
+		// avoiding divided by zero 
+		double minValidAmp=0.00000000001F;
+		if (minAmp==0){
+			minAmp=minValidAmp;
 		}
 			
-		if (absoluteSpectrogram.length>0){
-				
-			numFrequencyUnit=absoluteSpectrogram[0].length;
-			unitFrequency=(double)wave.getWaveHeader().getSampleRate()/2/numFrequencyUnit;	// frequency could be caught within the half of nSamples according to Nyquist theory
-					
-			// normalization of absoultSpectrogram
-			spectrogram=new double[numFrames][numFrequencyUnit];
-				
-			// set max and min amplitudes
-			double maxAmp=Double.MIN_VALUE;
-		    double minAmp=Double.MAX_VALUE;	
-			for (int i=0; i<numFrames; i++){
-				for (int j=0; j<numFrequencyUnit; j++){
-					if (absoluteSpectrogram[i][j]>maxAmp){
-						maxAmp=absoluteSpectrogram[i][j];
-					}
-					else if(absoluteSpectrogram[i][j]<minAmp){
-						minAmp=absoluteSpectrogram[i][j];
-					}
+		double diff=Math.log10(maxAmp/minAmp);	// perceptual difference
+		for (int i=0; i<numFrames; i++){
+			for (int j=0; j<numFrequencyUnit; j++){
+				if (absoluteSpectrogram[i][j]<minValidAmp){
+					spectrogram[i][j]=0;
+				}
+				else{
+					spectrogram[i][j]=(Math.log10(absoluteSpectrogram[i][j]/minAmp))/diff;
 				}
 			}
-			// end set max and min amplitudes
-				
-			// normalization
-			// avoiding divided by zero 
-			double minValidAmp=0.00000000001F;
-			if (minAmp==0){
-				minAmp=minValidAmp;
+		}
+		// end normalization
+		
+		if (releaseAbsoluteSpectrogram){
+			absoluteSpectrogram=null;
+		}
+	}
+	
+	/**
+	 * Lay out the samples frame after frame, each frame is fftSampleSize samples and overlaps the previous frame when overlapFactor>1
+	 * 
+	 * @param amplitudes	samples of the wave
+	 * @param fftSampleSize	number of sample in fft
+	 * @param overlapFactor	1/overlapFactor overlapping, 0 for no overlapping
+	 * @return samples of the frames, frame f starts at f*fftSampleSize
+	 */
+	static short[] getOverlappedAmplitudes(short[] amplitudes, int fftSampleSize, int overlapFactor){
+		
+		if (overlapFactor<=1){
+			return amplitudes;
+		}
+		
+		int numOverlappedSamples=amplitudes.length*overlapFactor;
+		int backSamples=fftSampleSize*(overlapFactor-1)/overlapFactor;
+		int fftSampleSize_1=fftSampleSize-1;
+		short[] overlapAmp= new short[numOverlappedSamples];
+		int pointer=0;
+		for (int i=0; i<amplitudes.length; i++){
+			overlapAmp[pointer++]=amplitudes[i];
+			if (pointer%fftSampleSize==fftSampleSize_1){
+				// overlap
+				i-=backSamples;
+			}
+		}
+		return overlapAmp;
+	}
+	
+	/**
+	 * Transform the frames from fromFrame (inclusive) to toFrame (exclusive) into absoluteSpectrogram, the transformed frames are skipped
+	 * Each call windows the frames in its own signal buffer, so calls on different frames can run at the same time
+	 */
+	private void transformFrames(short[] amplitudes, double[] win, int fromFrame, int toFrame){
+		double[] signal=new double[fftSampleSize];
+		FastFourierTransform fft = new FastFourierTransform();
+		for (int f=fromFrame; f<toFrame; f++){
+			if (absoluteSpectrogram[f]!=null){
+				continue;
 			}
-				
-			double diff=Math.log10(maxAmp/minAmp);	// perceptual difference
-			for (int i=0; i<numFrames; i++){
-				for (int j=0; j<numFrequencyUnit; j++){
-					if (absoluteSpectrogram[i][j]<minValidAmp){
-						spectrogram[i][j]=0;
-					}
-					else{
-						spectrogram[i][j]=(Math.log10(absoluteSpectrogram[i][j]/minAmp))/diff;
-					}
+			// set signals for fft
+			SpectrumKernels.window(amplitudes, f*fftSampleSize, win, signal);
+			absoluteSpectrogram[f]=fft.getMagnitudes(signal);
+		}
+	}
+	
+	/**
+	 * Split the frames into blocks of consecutive frames, and transform the blocks by the executor
+	 * Frames of failed tasks are transformed serially, so the spectrogram is always complete
+	 */
+	private void transformFramesInParallel(final short[] amplitudes, final double[] win, int fromFrame, int toFrame){
+		
+		int numTasks=Runtime.getRuntime().availableProcessors()*4;
+		int framesPerTask=Math.max((toFrame-fromFrame+numTasks-1)/numTasks, SPECTROGRAM_MIN_FRAMES_PER_TASK);
+		
+		List<Callable<Object>> tasks=new ArrayList<Callable<Object>>();
+		for (int f=fromFrame; f<toFrame; f+=framesPerTask){
+			final int taskFromFrame=f;
+			final int taskToFrame=Math.min(f+framesPerTask, toFrame);
+			tasks.add(new Callable<Object>(){
+				public Object call(){
+					transformFrames(amplitudes, win, taskFromFrame, taskToFrame);
+					return null;
 				}
+			});
+		}
+		
+		try {
+			Iterator<Future<Object>> futureIterator=executor.invokeAll(tasks).iterator();
+			while (futureIterator.hasNext()){
+				futureIterator.next().get();
 			}
-			// end normalization
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			e.printStackTrace();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
 		}
+		
+		transformFrames(amplitudes, win, fromFrame, toFrame);
 	}
 	
 	/**
@@ -181,18 +391,58 @@ public class Spectrogram{
 	 * 
 	 * @return	logarithm normalized spectrogram
 	 */
-	public double[][] getNormalizedSpectrogramData(){
+	public synchronized double[][] getNormalizedSpectrogramData(){
+		if (spectrogram==null && numFrames>0){
+			buildNormalizedSpectrogram();
+		}
 		return spectrogram;
 	}
 	
 	/**
 	 * Get spectrogram: spectrogram[time][frequency]=intensity
+	 * If the absolute spectrogram was released, it is transformed again
 	 * 
 	 * @return	absolute spectrogram
 	 */
-	public double[][] getAbsoluteSpectrogramData(){
+	public synchronized double[][] getAbsoluteSpectrogramData(){
+		buildAbsoluteFrames(0, numFrames);
+		isAbsoluteSpectrogramShared=true;
 		return absoluteSpectrogram;
 	}
+	
+	/**
+	 * Get the absolute spectrogram of some frames, only these frames are transformed, or all frames if the wave is resampled
+	 * 
+	 * @param fromFrame	first frame (inclusive)
+	 * @param toFrame	last frame (exclusive)
+	 * @return	frames[time-fromFrame][frequency]=intensity, copies of the frames which are never normalized in place
+	 */
+	public synchronized double[][] getFrames(int fromFrame, int toFrame){
+		if (fromFrame<0 || toFrame>numFrames || fromFrame>toFrame){
+			System.err.println("Spectrogram: frames "+fromFrame+" to "+toFrame+" are out of 0 to "+numFrames);
+			return null;
+		}
+		buildAbsoluteFrames(fromFrame, toFrame);
+		double[][] frames=new double[toFrame-fromFrame][];
+		for (int i=0; i<frames.length; i++){
+			frames[i]=absoluteSpectrogram[fromFrame+i].clone();
+		}
+		return frames;
+	}
+	
+	/**
+	 * Drop the absolute spectrogram once the normalized spectrogram is computed, the normalization is then done in place
+	 * Use it when only the normalized spectrogram is read, e.g. for fingerprinting, to keep one spectrogram in memory
+	 * The absolute spectrogram from getAbsoluteSpectrogramData() is kept as it is, the normalization is then not in place
+	 * 
+	 * @param releaseAbsoluteSpectrogram	true to drop the absolute spectrogram, default false
+	 */
+	public synchronized void setReleaseAbsoluteSpectrogram(boolean releaseAbsoluteSpectrogram){
+		this.releaseAbsoluteSpectrogram=releaseAbsoluteSpectrogram;
+		if (releaseAbsoluteSpectrogram && spectrogram!=null){
+			absoluteSpectrogram=null;
+		}
+	}
 
 	public int getNumFrames(){
 		return numFrames;
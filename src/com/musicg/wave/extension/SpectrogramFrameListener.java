@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave.extension;
+
+/**
+ * Receives the frames of a streaming spectrogram
+ *
+ * @author Jacquet Wong
+ */
+public interface SpectrogramFrameListener{
+
+	/**
+	 * Called when a frame of the spectrogram is computed
+	 *
+	 * @param frame	frame number, starting from 0
+	 * @param magnitudes	absolute spectrum of the frame: magnitudes[frequency_unit]=intensity, owned by the listener
+	 */
+	public void onFrame(int frame, double[] magnitudes);
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave.extension;
+
+import java.io.IOException;
+
+import com.musicg.dsp.FastFourierTransform;
+import com.musicg.dsp.WindowFunction;
+import com.musicg.wave.WaveStream;
+
+/**
+ * Builds the absolute spectrogram of a stream of samples frame by frame
+ * Samples are pushed into a ring buffer of fftSampleSize, and each frame is passed to the listener as soon as its samples are available
+ * The frames are identical to the frames of Spectrogram.getAbsoluteSpectrogramData() with the same fftSampleSize and overlapFactor
+ *
+ * @author Jacquet Wong
+ */
+public class StreamingSpectrogram{
+
+	private int fftSampleSize;	// number of sample in fft, the value needed to be a number to power of 2
+	private int overlapFactor;	// 1/overlapFactor overlapping, e.g. 1/4=25% overlapping
+	private int hopSize;	// number of samples between the starts of two frames
+	private SpectrogramFrameListener listener;
+
+	private short[] ringBuffer;	// the latest fftSampleSize samples
+	private int ringMask;
+	private long numSamples;	// number of samples pushed
+	private int numFrames;	// number of frames emitted
+	private long nextFrameEnd;	// numSamples needed to emit the next frame
+	private boolean finished;
+
+	private double[] window;
+	private double[] signal;
+	private FastFourierTransform fft;
+
+	/**
+	 * Constructor
+	 *
+	 * @param fftSampleSize	number of sample in fft, the value needed to be a number to power of 2
+	 * @param overlapFactor	1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for no overlapping
+	 * @param listener	receiver of the frames
+	 */
+	public StreamingSpectrogram(int fftSampleSize, int overlapFactor, SpectrogramFrameListener listener){
+
+		if (Integer.bitCount(fftSampleSize)==1){
+			this.fftSampleSize=fftSampleSize;
+		}
+		else{
+			System.err.print("The input number must be a power of 2");
+			this.fftSampleSize=Spectrogram.SPECTROGRAM_DEFAULT_FFT_SAMPLE_SIZE;
+		}
+		this.overlapFactor=overlapFactor;
+		this.listener=listener;
+
+		if (overlapFactor>1){
+			int backSamples=this.fftSampleSize*(overlapFactor-1)/overlapFactor;
+			hopSize=this.fftSampleSize-backSamples;
+		}
+		else{
+			hopSize=this.fftSampleSize;
+		}
+
+		ringBuffer=new short[this.fftSampleSize];
+		ringMask=this.fftSampleSize-1;
+		numSamples=0;
+		numFrames=0;
+		nextFrameEnd=getFrameEnd(0);
+		finished=false;
+
+		WindowFunction windowFunction=new WindowFunction();
+		windowFunction.setWindowType("Hamming");
+		window=windowFunction.generate(this.fftSampleSize);
+		signal=new double[this.fftSampleSize];
+		fft=new FastFourierTransform();
+	}
+
+	/**
+	 * Push samples into the spectrogram, the completed frames are passed to the listener
+	 *
+	 * @param amplitudes	sample amplitudes
+	 * @param offset	start position in amplitudes
+	 * @param length	number of samples to push
+	 */
+	public void push(short[] amplitudes, int offset, int length){
+		if (finished){
+			System.err.println("StreamingSpectrogram: samples pushed after finish");
+			return;
+		}
+
+		int end=offset+length;
+		for (int i=offset; i<end; i++){
+			ringBuffer[(int)(numSamples&ringMask)]=amplitudes[i];
+			numSamples++;
+			if (numSamples==nextFrameEnd){
+				emitFrame(true, true);
+			}
+		}
+	}
+
+	/**
+	 * Push all samples of a wave stream into the spectrogram and finish it
+	 *
+	 * @param waveStream	wave stream to be read
+	 * @throws IOException
+	 */
+	public void push(WaveStream waveStream) throws IOException{
+		short[] amplitudes=new short[fftSampleSize];
+		int numRead;
+		while ((numRead=waveStream.readSamples(amplitudes))>=0){
+			push(amplitudes, 0, numRead);
+		}
+		finish();
+	}
+
+	/**
+	 * Mark the end of the samples, the last partly filled frames are passed to the listener
+	 * The number of frames is then the same as Spectrogram.getNumFrames()
+	 */
+	public void finish(){
+		if (finished){
+			return;
+		}
+		finished=true;
+
+		// overlapped frames are counted on the overlapped samples
+		// only the first incomplete frame has the remaining samples, the frames after it are zero, same as Spectrogram
+		if (overlapFactor>1){
+			long totalFrames=numSamples*overlapFactor/fftSampleSize;
+			boolean hasSamples=true;
+			while (numFrames<totalFrames){
+				emitFrame(false, hasSamples);
+				hasSamples=false;
+			}
+		}
+	}
+
+	// frame f is complete when its (fftSampleSize-1)-th sample is pushed
+	private long getFrameEnd(int frame){
+		if (overlapFactor>1){
+			return (long)frame*hopSize+fftSampleSize-1;
+		}
+		return (long)frame*hopSize+fftSampleSize;
+	}
+
+	private void emitFrame(boolean complete, boolean hasSamples){
+
+		long startSample=(long)numFrames*hopSize;
+
+		// set signals for fft
+		for (int n=0; n<fftSampleSize; n++){
+			long sample=startSample+n;
+			if (hasSamples && sample<numSamples && sample>numSamples-1-fftSampleSize){
+				signal[n]=ringBuffer[(int)(sample&ringMask)]*window[n];
+			}
+			else{
+				signal[n]=0;
+			}
+		}
+
+		// the overlapped frame ends with the sample before the next frame starts, same as Spectrogram
+		if (overlapFactor>1){
+			long lastSample=startSample+hopSize-1;
+			if (complete){
+				signal[fftSampleSize-1]=ringBuffer[(int)(lastSample&ringMask)]*window[fftSampleSize-1];
+			}
+			else{
+				signal[fftSampleSize-1]=0;
+			}
+		}
+		// end set signals for fft
+
+		listener.onFrame(numFrames, fft.getMagnitudes(signal));
+
+		numFrames++;
+		nextFrameEnd=getFrameEnd(numFrames);
+	}
+
+	/**
+	 * Number of frames passed to the listener
+	 *
+	 * @return number of frames
+	 */
+	public int getNumFrames(){
+		return numFrames;
+	}
+
+	public int getFftSampleSize(){
+		return fftSampleSize;
+	}
+
+	public int getOverlapFactor(){
+		return overlapFactor;
+	}
+}